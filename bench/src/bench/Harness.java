@@ -0,0 +1,145 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small average-time benchmark runner: warmup iterations, then timed measurement iterations,
+ * reported in ns/op. Results can be written as CSV and compared against a previous run.
+ */
+public class Harness {
+    private static final int BATCH = 64;
+    private static volatile Object sentinel = new Object();
+    
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final Map<String, Operation> benchmarks = new LinkedHashMap<>();
+    private Object escaped;
+    
+    public interface Operation {
+        Object run(int index);
+    }
+    
+    public Harness(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+    
+    public void add(String name, Operation operation) {
+        benchmarks.put(name, operation);
+    }
+    
+    public List<Result> run(String filter) {
+        List<Result> results = new ArrayList<>();
+        System.out.println(String.format("%-40s %5s %12s %10s  %s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+        for (Map.Entry<String, Operation> benchmark : benchmarks.entrySet()) {
+            if (filter != null && !benchmark.getKey().contains(filter)) {
+                continue;
+            }
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(benchmark.getValue());
+            }
+            double[] scores = new double[measurementIterations];
+            for (int i = 0; i < measurementIterations; i++) {
+                scores[i] = iteration(benchmark.getValue());
+            }
+            Result result = new Result(benchmark.getKey(), scores);
+            results.add(result);
+            System.out.println(String.format("%-40s %5d %12.1f ± %8.1f  ns/op",
+                result.name, scores.length, result.mean, result.error));
+        }
+        return results;
+    }
+    
+    private double iteration(Operation operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                consume(operation.run((int) operations + i));
+            }
+            operations += BATCH;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return (double) elapsed / operations;
+    }
+    
+    private void consume(Object result) {
+        // Keeps the JIT from discarding the benchmarked work as dead code.
+        if (result == sentinel) {
+            escaped = result;
+        }
+    }
+    
+    public static void writeCsv(List<Result> results, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("benchmark,ns_per_op,error");
+        for (Result result : results) {
+            lines.add(result.name + "," + result.mean + "," + result.error);
+        }
+        Files.write(file, lines);
+    }
+    
+    /**
+     * Returns the benchmarks that got slower than {@code tolerance} (0.10 = 10%) relative to a CSV
+     * written by an earlier run.
+     */
+    public static List<String> regressions(List<Result> results, Path baseline, double tolerance) throws IOException {
+        Map<String, Double> previous = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(baseline)) {
+            String[] fields = line.split(",");
+            if (fields.length >= 2 && !fields[0].equals("benchmark")) {
+                previous.put(fields[0], Double.parseDouble(fields[1]));
+            }
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            Double before = previous.get(result.name);
+            if (before != null && result.mean > before * (1 + tolerance)) {
+                regressions.add(String.format("%s: %.1f -> %.1f ns/op (+%.0f%%)",
+                    result.name, before, result.mean, (result.mean / before - 1) * 100));
+            }
+        }
+        return regressions;
+    }
+    
+    public static class Result {
+        private final String name;
+        private final double mean;
+        private final double error;
+        
+        Result(String name, double[] scores) {
+            this.name = name;
+            double sum = 0;
+            for (double score : scores) {
+                sum += score;
+            }
+            this.mean = sum / scores.length;
+            double variance = 0;
+            for (double score : scores) {
+                variance += (score - mean) * (score - mean);
+            }
+            this.error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0.0;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public double getMean() {
+            return mean;
+        }
+        
+        public double getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import classifier.Classifier;
+import classifier.RuleFile;
+import config.Config;
+import engine.QueryEngine;
+import model.UserProfile;
+import parser.ProfileParser;
+import store.DataStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Benchmarks for the load and query hot paths over generated profiles.
+ *
+ * <pre>
+ * java -cp out:bench/out bench.ProfileBenchmarks [name-filter]
+ *   -Dbench.profiles=2000 -Dbench.lines=12 -Dbench.warmup=3 -Dbench.iterations=5 -Dbench.time=1000
+ *   -Dbench.csv=results.csv -Dbench.baseline=previous.csv -Dbench.tolerance=0.10
+ * </pre>
+ */
+public class ProfileBenchmarks {
+    public static void main(String[] args) throws Exception {
+        int profileCount = Integer.getInteger("bench.profiles", 2000);
+        int analysisLines = Integer.getInteger("bench.lines", 12);
+        Config.setShowExecutionTime(false);
+        
+        ProfileFixtures fixtures = new ProfileFixtures(42, analysisLines);
+        ProfileParser parser = new ProfileParser();
+        Path[] paths = new Path[profileCount];
+        String[] contents = new String[profileCount];
+        UserProfile[] profiles = new UserProfile[profileCount];
+        for (int i = 0; i < profileCount; i++) {
+            paths[i] = Paths.get("user_" + (i + 1) + ".md");
+            contents[i] = fixtures.next();
+            profiles[i] = parser.parse(paths[i], contents[i]);
+        }
+        
+        QueryEngine engine = new QueryEngine();
+        DataStore store = new DataStore();
+        for (UserProfile profile : profiles) {
+            engine.classifyUser(profile);
+            store.addUser(profile);
+        }
+        store.commit();
+        
+        Harness harness = new Harness(Integer.getInteger("bench.warmup", 3),
+            Integer.getInteger("bench.iterations", 5), Integer.getInteger("bench.time", 1000));
+        
+        harness.add("ProfileParser.parse", i -> parser.parse(paths[i % profileCount], contents[i % profileCount]));
+        
+        for (Classifier classifier : (Config.getRulesFile() != null
+                ? RuleFile.load(Paths.get(Config.getRulesFile())) : RuleFile.loadDefault()).getClassifiers()) {
+            harness.add("Classifier." + classifier.getCategoryName() + ".matches",
+                i -> classifier.matches(profiles[i % profileCount]));
+        }
+        
+        harness.add("QueryEngine.classifyUser", i -> {
+            UserProfile profile = parser.parse(paths[i % profileCount], contents[i % profileCount]);
+            engine.classifyUser(profile);
+            return profile;
+        });
+        
+        // Re-adding known users exercises the replace path at the steady-state index size.
+        harness.add("DataStore.addUser", i -> {
+            store.addUser(profiles[i % profileCount]);
+            return store;
+        });
+        
+        String[] categories = {"fraudsters", "businesses", "real_estate_agents", "new_users"};
+        harness.add("DataStore.getUsersByCategory", i -> {
+            Set<String> users = store.getUsersByCategory(categories[i & 3]);
+            int hash = 0;
+            for (String userId : users) {
+                hash += userId.length();
+            }
+            return hash;
+        });
+        
+        harness.add("DataStore.addTagToUser", i ->
+            store.addTagToUser(profiles[i % profileCount].getUserId(), "bench_" + (i & 7)));
+        
+        String filter = args.length > 0 ? args[0] : null;
+        List<Harness.Result> results = harness.run(filter);
+        
+        String csv = System.getProperty("bench.csv");
+        if (csv != null) {
+            Harness.writeCsv(results, Paths.get(csv));
+        }
+        String baseline = System.getProperty("bench.baseline");
+        if (baseline != null) {
+            double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", "0.10"));
+            List<String> regressions = Harness.regressions(results, Paths.get(baseline), tolerance);
+            for (String regression : regressions) {
+                System.out.println("REGRESSION " + regression);
+            }
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+}
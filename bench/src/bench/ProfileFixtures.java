@@ -0,0 +1,103 @@
+package bench;
+
+import java.util.Random;
+import java.util.UUID;
+
+public class ProfileFixtures {
+    private static final String[] PHRASES = {
+        "کلاهبردار", "فریب", "تقلب", "بیعانه گرفت", "بیعانه را گرفت و نیامد", "سر کار نیامد", "پول گرفت ولی",
+        "جواب نمی دهد", "گوشی جواب نمیده", "شرکت دفتر ندارد", "آگهی تکراری است", "تکراری بودن", "نقض قوانین",
+        "رد شده به دلیل تکرار", "retire_reason: تکراری", "ReliableReport", "گزارش معتبر کلاهبرداری",
+        "result_is_accepted: True", "آژانس", "بنگاه", "شرکت", "مشاور", "مشاوره", "خدمات حرفه ای", "سرویس دهنده",
+        "باربری", "حمل و نقل", "نقل مکان", "واسطه", "دلال", "کمیسیون", "Lead Generation", "تولید سرنخ",
+        "فایل املاک", "سابقه کار", "سال سابقه", "تخصص در", "متخصص در", "حرفه ای", "ارائه خدمات", "مشاور املاک",
+        "آژانس املاک", "بنگاه املاک", "مشاور مسکن", "بازار املاک", "ملک برای فروش", "آپارتمان فروش", "ویلا فروش",
+        "سرمایه گذاری ملک", "تهاتر ملک", "متراژ", "سند تک برگ", "سند ششدانگ", "رهن و اجاره", "پیش پرداخت",
+        "ودیعه", "مسکونی", "تجاری", "کاربر عادی", "خرید گوشی", "فروش دوچرخه", "BUSINESS_123",
+        "این کاربر فعال است", "lead generation", "real-estate", "apartment-sell", "apartment-rent"
+    };
+    
+    private static final String[] FILLER = {
+        "کاربر در بازه زمانی بررسی شده چندین آگهی منتشر کرده و بازدید قابل توجهی داشته است.",
+        "الگوی رفتاری کاربر با فعالیت معمول یک فروشنده شخصی همخوانی دارد.",
+        "تعامل کاربر با خریداران عمدتا از طریق چت انجام شده است.",
+        "The user mostly browses listings in a few categories and rarely contacts sellers."
+    };
+    
+    private static final String[] SLUGS = {
+        "apartment-sell", "apartment-rent", "mobile-phones", "bicycle", "commercial-rent",
+        "house-villa-sell", "plot-old", "furniture", "real-estate-services", "car"
+    };
+    
+    private static final String[][] METRICS = {
+        {"supply_total_posts", "300"}, {"supply_published_posts", "50"}, {"supply_total_views", "5000"},
+        {"supply_total_revenue", "90000000"}, {"supply_unique_categories", "12"}, {"supply_unique_cities", "8"},
+        {"supply_total_chats", "100"}, {"supply_total_calls", "60"}, {"demand_searches_made", "2000"},
+        {"demand_posts_contacted", "40"}, {"demand_posts_viewed", "900"}
+    };
+    
+    private final Random random;
+    private final int analysisLines;
+    
+    public ProfileFixtures(long seed, int analysisLines) {
+        this.random = new Random(seed);
+        this.analysisLines = analysisLines;
+    }
+    
+    public String next() {
+        StringBuilder profile = new StringBuilder(4096);
+        profile.append("# Final Profile (UUID): ").append(new UUID(random.nextLong(), random.nextLong())).append('\n');
+        profile.append("Generated: 2024-0").append(1 + random.nextInt(9)).append("-1").append(random.nextInt(10)).append("\n\n");
+        profile.append("## تحلیل کاربر\n\n");
+        
+        int lines = random.nextInt(analysisLines + 1);
+        for (int i = 0; i < lines; i++) {
+            profile.append("- ");
+            if (random.nextInt(3) == 0) {
+                profile.append(FILLER[random.nextInt(FILLER.length)]);
+            } else {
+                int phrases = 1 + random.nextInt(3);
+                for (int p = 0; p < phrases; p++) {
+                    profile.append(p > 0 ? " " : "").append(PHRASES[random.nextInt(PHRASES.length)]);
+                }
+            }
+            profile.append('\n');
+        }
+        
+        profile.append("\n## Metrics\n```json\n{\n");
+        if (random.nextInt(10) < 3) {
+            String[] types = {"business", "premium-panel", "personal"};
+            profile.append("  \"business_type\": \"").append(types[random.nextInt(types.length)]).append("\",\n");
+        }
+        for (String[] metric : METRICS) {
+            if (random.nextInt(10) < 9) {
+                profile.append("  \"").append(metric[0]).append("\": ")
+                    .append(value(Long.parseLong(metric[1]))).append(",\n");
+            }
+        }
+        String[] rates = {"0.0", "0.5", "1.0"};
+        profile.append("  \"supply_publish_rate\": ").append(rates[random.nextInt(rates.length)]).append(",\n");
+        profile.append("  \"contact_chat_enabled\": ").append(random.nextBoolean()).append("\n}\n```\n");
+        
+        int posts = random.nextInt(4);
+        for (int i = 0; i < posts; i++) {
+            profile.append("- post: {\"cat1_slug\": \"").append(SLUGS[random.nextInt(SLUGS.length)])
+                .append("\", \"cat2_slug\": \"").append(SLUGS[random.nextInt(SLUGS.length)]).append("\"}\n");
+        }
+        return profile.toString();
+    }
+    
+    private long value(long max) {
+        int bucket = random.nextInt(100);
+        if (bucket < 30) {
+            return 0;
+        }
+        if (bucket < 60) {
+            return 1 + random.nextInt(9);
+        }
+        if (bucket < 85) {
+            return 10 + random.nextInt(90);
+        }
+        return 100 + (long) (random.nextDouble() * Math.max(0, max - 100));
+    }
+}
@@ -1,14 +1,42 @@
 import cli.CommandParser;
 import cli.QueryExecutor;
+import cli.ShardedQueryExecutor;
 import config.Config;
+import engine.ProfileLoader;
+import engine.ProfileWatcher;
 import engine.QueryEngine;
+import server.QueryServer;
+import shard.ShardCoordinator;
+import store.TagLog;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class Main {
     private static final String DEFAULT_DATA_DIR = "data/profiles";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final String USAGE = String.join("\n",
+        "Usage: java -cp out Main [options] [data directory or bundle]",
+        "  --lazy-content            keep profile text on disk and read it on demand",
+        "  --watch                   reload profile files that change while running",
+        "  --tcp-port <port>         serve the line protocol on 127.0.0.1 (0 picks a free port)",
+        "  --http-port <port>        serve HTTP on 127.0.0.1 (0 picks a free port)",
+        "  --tag-log <dir>           persist ADD_TAG/REMOVE_TAG in a write-ahead log",
+        "  --tag-sync <policy>       per-op, group or async",
+        "  --snapshot <file>         start from a snapshot, creating it if it does not exist",
+        "  --rules <file>            classifier rules instead of the default ones",
+        "  --shards <n>              split the profiles over n worker processes",
+        "  --shard-timeout <millis>  how long to wait for each shard's reply");
     private static final String BANNER = 
         "╔═══════════════════════════════════════════════════════════╗\n" +
         "║         Divar User Analysis - Query Engine v1.0           ║\n" +
@@ -16,72 +44,293 @@ public class Main {
     
     public static void main(String[] args) {
         try {
+            // Results are written in bulk and flushed once per command instead of once per line.
+            System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+                false, System.out.charset()));
             System.out.println(BANNER);
             System.out.println();
             
-            String dataDir = args.length > 0 ? args[0] : DEFAULT_DATA_DIR;
+            String dataDir = DEFAULT_DATA_DIR;
+            int tcpPort = -1;
+            int httpPort = -1;
+            String snapshotFile = null;
+            String tagLogDir = null;
+            boolean watch = false;
+            int shards = 1;
+            // Passed on to the shard processes when running as a coordinator.
+            List<String> shardOptions = new ArrayList<>();
+            boolean dataDirGiven = false;
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    String option = args[i];
+                    if (!option.startsWith("--")) {
+                        if (dataDirGiven) {
+                            throw new IllegalArgumentException("More than one data directory: " + dataDir + ", " + option);
+                        }
+                        dataDir = option;
+                        dataDirGiven = true;
+                    } else if (option.equals("--lazy-content")) {
+                        Config.setLazyContent(true);
+                        shardOptions.add(option);
+                    } else if (option.equals("--watch")) {
+                        watch = true;
+                        shardOptions.add(option);
+                    } else if (option.equals("--tcp-port")) {
+                        tcpPort = port(option, value(args, i++));
+                    } else if (option.equals("--http-port")) {
+                        httpPort = port(option, value(args, i++));
+                    } else if (option.equals("--tag-log")) {
+                        tagLogDir = value(args, i++);
+                    } else if (option.equals("--tag-sync")) {
+                        String policy = value(args, i++);
+                        Config.setTagLogSyncPolicy(syncPolicy(policy));
+                        shardOptions.addAll(List.of(option, policy));
+                    } else if (option.equals("--rules")) {
+                        Config.setRulesFile(value(args, i++));
+                        shardOptions.addAll(List.of(option, args[i]));
+                    } else if (option.equals("--snapshot")) {
+                        snapshotFile = value(args, i++);
+                    } else if (option.equals("--shards")) {
+                        shards = number(option, value(args, i++));
+                        if (shards < 1) {
+                            throw new IllegalArgumentException("--shards needs at least 1 shard, got " + shards);
+                        }
+                    } else if (option.equals("--shard-timeout")) {
+                        Config.setShardTimeoutMillis(number(option, value(args, i++)));
+                    } else if (option.equals("--shard")) {
+                        String shard = value(args, i++);
+                        String[] parts = shard.split("/");
+                        if (parts.length != 2) {
+                            throw new IllegalArgumentException("--shard needs <index>/<count>, got '" + shard + "'");
+                        }
+                        Config.setShard(number(option, parts[0]), number(option, parts[1]));
+                    } else {
+                        throw new IllegalArgumentException("Unknown option " + option);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.flush();
+                System.err.println("❌ Error: " + e.getMessage());
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+            
+            if (shards > 1) {
+                if (tcpPort >= 0 || httpPort >= 0) {
+                    System.err.println("   ⚠ Warning: --tcp-port/--http-port are not served with --shards; reading stdin");
+                }
+                runCoordinator(shards, dataDir, shardOptions, tagLogDir, snapshotFile);
+                return;
+            }
             
-            System.out.println("📂 Loading profiles from: " + dataDir);
             long startTime = System.currentTimeMillis();
             
             QueryEngine engine = new QueryEngine();
-            int profileCount = engine.loadProfiles(dataDir);
+            engine.getStats().register();
+            int profileCount;
+            if (snapshotFile != null && Files.exists(Paths.get(snapshotFile))) {
+                System.out.println("📂 Loading snapshot from: " + snapshotFile);
+                profileCount = engine.loadSnapshot(snapshotFile, dataDir);
+            } else {
+                System.out.println("📂 Loading profiles from: " + dataDir);
+                profileCount = engine.loadProfiles(dataDir);
+                if (snapshotFile != null) {
+                    engine.saveSnapshot(snapshotFile);
+                    System.out.println("✓ Saved snapshot to " + snapshotFile);
+                }
+            }
             
             long endTime = System.currentTimeMillis();
             double loadTime = (endTime - startTime) / 1000.0;
             
             System.out.println("✓ Loaded " + profileCount + " profiles");
+            if (tagLogDir != null) {
+                int replayed = engine.openTagLog(tagLogDir);
+                System.out.println("✓ Replayed " + replayed + " tag change(s) from " + tagLogDir);
+            }
             if (Config.isShowExecutionTime()) {
                 System.out.println(String.format("⏱  Loaded in %.3f seconds", loadTime));
+                printLoadStats(engine.getLastLoadStats());
+            }
+            if (watch && !Files.isDirectory(Paths.get(dataDir))) {
+                System.err.println("   ⚠ Warning: --watch needs a profile directory; not watching " + dataDir);
+            } else if (watch) {
+                ProfileWatcher watcher = new ProfileWatcher(engine, dataDir, Config.getWatchDebounceMillis(),
+                    Config.getWatchMaxDelayMillis());
+                watcher.start();
+                System.out.println("👁  Watching " + dataDir + " for profile changes");
             }
             System.out.println("─────────────────────────────────────────────────────────────");
             System.out.println();
             
-            CommandParser parser = new CommandParser();
-            QueryExecutor executor = new QueryExecutor(engine);
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-            String line;
-            
-            System.out.println("Ready for queries. Available commands:");
-            System.out.println("   • FIND <category>");
-            System.out.println("   • ADD_TAG <userId> <tag>");
-            System.out.println("   • REMOVE_TAG <userId> <tag>");
-            System.out.println("   • GET_USER_PROFILE <userId>");
-            System.out.println("   • toggle_time (enable/disable execution time)");
-            System.out.println("   • exit / quit");
-            System.out.println();
-            
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                
-                if (line.isEmpty()) {
-                    continue;
+            if (tcpPort >= 0 || httpPort >= 0) {
+                QueryServer server = new QueryServer(engine, tcpPort, httpPort, Config.getServerMaxConnections(),
+                    Config.getServerMaxConcurrentCommands(), System.getenv(QueryServer.COORDINATOR_TOKEN_VARIABLE));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop();
+                    closeQuietly(engine);
+                }));
+                server.start();
+                if (server.getTcpPort() >= 0) {
+                    System.out.println("🌐 Serving line protocol on 127.0.0.1:" + server.getTcpPort());
                 }
-                
-                if (line.equalsIgnoreCase("exit") || line.equalsIgnoreCase("quit")) {
-                    System.out.println("\nBye!");
-                    break;
+                if (server.getHttpPort() >= 0) {
+                    System.out.println("🌐 Serving HTTP on http://127.0.0.1:" + server.getHttpPort() + "/query?q=<command>");
                 }
-                
-                if (line.equalsIgnoreCase("toggle_time")) {
-                    Config.toggleExecutionTime();
-                    System.out.println("⏱  Execution time display: " + 
-                        (Config.isShowExecutionTime() ? "✓ ON" : "✗ OFF"));
-                    System.out.println("─────────────────────────────────────────────────────────────");
-                    System.out.println();
-                    continue;
+                if (Config.getShardCount() > 1 && server.getTcpPort() >= 0) {
+                    System.out.println(ShardCoordinator.WORKER_READY + " " + server.getTcpPort() + " " + profileCount);
                 }
-                
-                System.out.println();
-                CommandParser.ParsedCommand command = parser.parse(line);
-                executor.execute(command);
-                System.out.println();
+                System.out.flush();
+                return;
             }
             
+            QueryExecutor executor = new QueryExecutor(engine);
+            runCommands(executor::execute);
+            System.out.flush();
+            engine.close();
+            
         } catch (IOException e) {
+            System.out.flush();
             System.err.println("❌ Error: " + e.getMessage());
             System.exit(1);
         }
     }
+    
+    /** The value after the option at {@code i}. */
+    private static String value(String[] args, int i) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("--")) {
+            throw new IllegalArgumentException(args[i] + " needs a value");
+        }
+        return args[i + 1];
+    }
+    
+    private static int number(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number, got '" + value + "'");
+        }
+    }
+    
+    private static int port(String option, String value) {
+        int port = number(option, value);
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException(option + " needs a port from 0 to 65535, got " + port);
+        }
+        return port;
+    }
+    
+    private static TagLog.SyncPolicy syncPolicy(String value) {
+        try {
+            return TagLog.SyncPolicy.valueOf(value.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("--tag-sync needs per-op, group or async, got '" + value + "'");
+        }
+    }
+    
+    /**
+     * Loads the profiles in {@code shards} worker processes, each with its own tag log directory
+     * and snapshot file, and answers commands from stdin through them.
+     */
+    private static void runCoordinator(int shards, String dataDir, List<String> options, String tagLogDir,
+                                       String snapshotFile) throws IOException {
+        System.out.println("📂 Loading profiles from: " + dataDir + " in " + shards + " shards");
+        long startTime = System.currentTimeMillis();
+        ShardCoordinator coordinator = ShardCoordinator.start(shards, shard -> {
+            List<String> shardArgs = new ArrayList<>(options);
+            if (tagLogDir != null) {
+                shardArgs.addAll(List.of("--tag-log", Paths.get(tagLogDir, "shard-" + shard).toString()));
+            }
+            if (snapshotFile != null) {
+                shardArgs.addAll(List.of("--snapshot", ShardedQueryExecutor.shardFile(snapshotFile, shard)));
+            }
+            shardArgs.add(dataDir);
+            return shardArgs;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(coordinator::close));
+        
+        System.out.println("✓ Loaded " + coordinator.getProfileCount() + " profiles");
+        if (Config.isShowExecutionTime()) {
+            System.out.println(String.format("⏱  Loaded in %.3f seconds", (System.currentTimeMillis() - startTime) / 1000.0));
+        }
+        System.out.println("─────────────────────────────────────────────────────────────");
+        System.out.println();
+        
+        ShardedQueryExecutor executor = new ShardedQueryExecutor(coordinator);
+        runCommands(executor::execute);
+        System.out.flush();
+        coordinator.close();
+    }
+    
+    private static void runCommands(Consumer<CommandParser.ParsedCommand> executor) throws IOException {
+        CommandParser parser = new CommandParser();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        
+        System.out.println("Ready for queries. Available commands:");
+        System.out.println("   • FIND <category> [AND|OR|NOT ...] [WHERE score >= n]");
+        System.out.println("   • TOP <k> <category> BY score");
+        System.out.println("   • FILTER <metric> <op> <n> [AND ...]");
+        System.out.println("   • SEARCH <words> [\"a phrase\"]");
+        System.out.println("   • ADD_TAG <userId> <tag>");
+        System.out.println("   • REMOVE_TAG <userId> <tag>");
+        System.out.println("   • GET_USER_PROFILE <userId>");
+        System.out.println("   • SAVE_SNAPSHOT <file>");
+        System.out.println("   • STATS [BY category]");
+        System.out.println("   • OVERLAP");
+        System.out.println("   • HISTOGRAM <metric>");
+        System.out.println("   • RELOAD_RULES [file]");
+        System.out.println("   • toggle_time (enable/disable execution time)");
+        System.out.println("   • exit / quit");
+        System.out.println();
+        
+        while ((line = prompt(reader)) != null) {
+            line = line.trim();
+            
+            if (line.isEmpty()) {
+                continue;
+            }
+            
+            if (line.equalsIgnoreCase("exit") || line.equalsIgnoreCase("quit")) {
+                System.out.println("\nBye!");
+                break;
+            }
+            
+            if (line.equalsIgnoreCase("toggle_time")) {
+                Config.toggleExecutionTime();
+                System.out.println("⏱  Execution time display: " + 
+                    (Config.isShowExecutionTime() ? "✓ ON" : "✗ OFF"));
+                System.out.println("─────────────────────────────────────────────────────────────");
+                System.out.println();
+                continue;
+            }
+            
+            System.out.println();
+            executor.accept(parser.parse(line));
+            System.out.println();
+        }
+    }
+    
+    private static String prompt(BufferedReader reader) throws IOException {
+        System.out.flush();
+        return reader.readLine();
+    }
+    
+    private static void closeQuietly(QueryEngine engine) {
+        try {
+            engine.close();
+        } catch (IOException e) {
+            System.err.println("   ⚠ Warning: " + e.getMessage());
+        }
+    }
+    
+    private static void printLoadStats(ProfileLoader.LoadStats stats) {
+        if (stats == null) {
+            return;
+        }
+        for (ProfileLoader.StageStats stage : stats.getStages()) {
+            System.out.println(String.format("   %-15s %6d item(s)  %2d thread(s)  %10.0f/s",
+                stage.getName(), stage.getCount(), stage.getThreads(), stage.getThroughput()));
+        }
+    }
 }
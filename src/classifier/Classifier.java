@@ -2,7 +2,26 @@ package classifier;
 
 import model.UserProfile;
 
+import java.util.Set;
+
 public interface Classifier {
+    int NO_MATCH = -1;
+    
     boolean matches(UserProfile profile);
     String getCategoryName();
+    
+    /** The score of a matching profile, or {@link #NO_MATCH}. Classifiers without a score use 1. */
+    default int score(UserProfile profile) {
+        return matches(profile) ? 1 : NO_MATCH;
+    }
+    
+    /** Categories this classifier reads via {@code profile.hasCategory}; they are assigned before it runs. */
+    default Set<String> getDependencies() {
+        return Set.of();
+    }
+    
+    /** The scoring rules behind {@link #matches}, or null for classifiers that are not rule-based. */
+    default RuleSet getRules() {
+        return null;
+    }
 }
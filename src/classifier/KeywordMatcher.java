@@ -0,0 +1,248 @@
+package classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+public class KeywordMatcher {
+    private static final String CHAIN_SEPARATOR = ".*";
+    private static final String REGEX_META = "\\[](){}?+*|^$.";
+    
+    private final int[] groupOffsets;
+    private final int patternCount;
+    
+    private final int[] literalLengths;
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    private final int[][] outputs;
+    
+    private final int[][] chains;
+    private final int[] chainPatternIds;
+    private final int[][] literalListeners;
+    
+    private final Pattern[] regexPatterns;
+    private final int[] regexPatternIds;
+    private final BitSet alwaysHits;
+    
+    public KeywordMatcher(String[]... groups) {
+        this.groupOffsets = new int[groups.length + 1];
+        List<String> patterns = new ArrayList<>();
+        for (int g = 0; g < groups.length; g++) {
+            groupOffsets[g] = patterns.size();
+            patterns.addAll(Arrays.asList(groups[g]));
+        }
+        groupOffsets[groups.length] = patterns.size();
+        this.patternCount = patterns.size();
+        
+        Map<String, Integer> literalIds = new LinkedHashMap<>();
+        List<int[]> chainList = new ArrayList<>();
+        List<Integer> chainIds = new ArrayList<>();
+        List<Pattern> regexList = new ArrayList<>();
+        List<Integer> regexIds = new ArrayList<>();
+        this.alwaysHits = new BitSet(patternCount);
+        
+        for (int id = 0; id < patternCount; id++) {
+            String pattern = patterns.get(id);
+            List<String> parts = splitChain(pattern);
+            if (parts == null) {
+                regexList.add(Pattern.compile(pattern, Pattern.DOTALL));
+                regexIds.add(id);
+            } else if (parts.isEmpty()) {
+                alwaysHits.set(id);
+            } else {
+                int[] chain = new int[parts.size()];
+                for (int i = 0; i < chain.length; i++) {
+                    chain[i] = literalIds.computeIfAbsent(parts.get(i), k -> literalIds.size());
+                }
+                chainList.add(chain);
+                chainIds.add(id);
+            }
+        }
+        
+        this.chains = chainList.toArray(new int[0][]);
+        this.chainPatternIds = chainIds.stream().mapToInt(Integer::intValue).toArray();
+        this.regexPatterns = regexList.toArray(new Pattern[0]);
+        this.regexPatternIds = regexIds.stream().mapToInt(Integer::intValue).toArray();
+        
+        String[] literals = literalIds.keySet().toArray(new String[0]);
+        this.literalLengths = new int[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            literalLengths[i] = literals[i].length();
+        }
+        this.literalListeners = buildListeners(literals.length);
+        
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        nodeOutputs.add(new ArrayList<>());
+        for (int lit = 0; lit < literals.length; lit++) {
+            int node = 0;
+            for (char c : literals[lit].toCharArray()) {
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            nodeOutputs.get(node).add(lit);
+        }
+        
+        int nodeCount = trie.size();
+        this.edgeChars = new char[nodeCount][];
+        this.edgeTargets = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            TreeMap<Character, Integer> edges = trie.get(node);
+            edgeChars[node] = new char[edges.size()];
+            edgeTargets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[node][i] = edge.getKey();
+                edgeTargets[node][i] = edge.getValue();
+                i++;
+            }
+        }
+        
+        this.failure = new int[nodeCount];
+        this.outputs = new int[nodeCount][];
+        outputs[0] = toArray(nodeOutputs.get(0));
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            failure[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Integer> merged = nodeOutputs.get(node);
+            for (int out : outputs[failure[node]]) {
+                merged.add(out);
+            }
+            outputs[node] = toArray(merged);
+            
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                int child = edgeTargets[node][i];
+                failure[child] = step(failure[node], edgeChars[node][i]);
+                queue.add(child);
+            }
+        }
+    }
+    
+    public Hits match(CharSequence text) {
+        BitSet hits = (BitSet) alwaysHits.clone();
+        int[] chainState = new int[chains.length];
+        int[] chainEnd = new int[chains.length];
+        
+        int node = 0;
+        for (int pos = 0; pos < text.length(); pos++) {
+            node = step(node, text.charAt(pos));
+            for (int literal : outputs[node]) {
+                int start = pos + 1 - literalLengths[literal];
+                for (int chain : literalListeners[literal]) {
+                    int state = chainState[chain];
+                    if (state < chains[chain].length && chains[chain][state] == literal && start >= chainEnd[chain]) {
+                        chainState[chain] = state + 1;
+                        chainEnd[chain] = pos + 1;
+                        if (state + 1 == chains[chain].length) {
+                            hits.set(chainPatternIds[chain]);
+                        }
+                    }
+                }
+            }
+        }
+        
+        for (int i = 0; i < regexPatterns.length; i++) {
+            if (regexPatterns[i].matcher(text).find()) {
+                hits.set(regexPatternIds[i]);
+            }
+        }
+        
+        return new Hits(hits);
+    }
+    
+    private int step(int node, char c) {
+        while (true) {
+            int index = Arrays.binarySearch(edgeChars[node], c);
+            if (index >= 0) {
+                return edgeTargets[node][index];
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = failure[node];
+        }
+    }
+    
+    private int[][] buildListeners(int literalCount) {
+        Map<Integer, List<Integer>> listeners = new HashMap<>();
+        for (int chain = 0; chain < chains.length; chain++) {
+            for (int literal : chains[chain]) {
+                List<Integer> list = listeners.computeIfAbsent(literal, k -> new ArrayList<>());
+                if (!list.contains(chain)) {
+                    list.add(chain);
+                }
+            }
+        }
+        int[][] result = new int[literalCount][];
+        for (int literal = 0; literal < literalCount; literal++) {
+            result[literal] = toArray(listeners.getOrDefault(literal, new ArrayList<>()));
+        }
+        return result;
+    }
+    
+    private static List<String> splitChain(String pattern) {
+        List<String> parts = new ArrayList<>();
+        int from = 0;
+        while (from <= pattern.length()) {
+            int sep = pattern.indexOf(CHAIN_SEPARATOR, from);
+            String part = sep < 0 ? pattern.substring(from) : pattern.substring(from, sep);
+            for (char c : part.toCharArray()) {
+                if (REGEX_META.indexOf(c) >= 0) {
+                    return null;
+                }
+            }
+            if (!part.isEmpty()) {
+                parts.add(part);
+            }
+            if (sep < 0) {
+                break;
+            }
+            from = sep + CHAIN_SEPARATOR.length();
+        }
+        return parts;
+    }
+    
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+    
+    public class Hits {
+        private final BitSet hits;
+        
+        private Hits(BitSet hits) {
+            this.hits = hits;
+        }
+        
+        public boolean any(int group) {
+            int next = hits.nextSetBit(groupOffsets[group]);
+            return next >= 0 && next < groupOffsets[group + 1];
+        }
+        
+        public int count(int group) {
+            return hits.get(groupOffsets[group], groupOffsets[group + 1]).cardinality();
+        }
+        
+        public boolean contains(int group, int index) {
+            return hits.get(groupOffsets[group] + index);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package classifier;
+
+import model.UserProfile;
+
+import java.util.Set;
+
+/** A classifier compiled from one section of a rules file. */
+public class RuleClassifier implements Classifier {
+    private final String categoryName;
+    private final Set<String> dependencies;
+    private final RuleSet rules;
+    private final String definition;
+    
+    RuleClassifier(String categoryName, Set<String> dependencies, RuleSet rules, String definition) {
+        this.categoryName = categoryName;
+        this.dependencies = Set.copyOf(dependencies);
+        this.rules = rules;
+        this.definition = definition;
+    }
+    
+    @Override
+    public boolean matches(UserProfile profile) {
+        return rules.matches(profile);
+    }
+    
+    @Override
+    public int score(UserProfile profile) {
+        return rules.evaluate(profile);
+    }
+    
+    @Override
+    public String getCategoryName() {
+        return categoryName;
+    }
+    
+    @Override
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+    
+    @Override
+    public RuleSet getRules() {
+        return rules;
+    }
+    
+    /** The section's source with comments and blank lines removed; equal definitions classify identically. */
+    public String getDefinition() {
+        return definition;
+    }
+}
@@ -0,0 +1,470 @@
+package classifier;
+
+import model.Metric;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Classifier definitions read from a text file (see {@code rules/classifiers.rules} for the
+ * syntax). Every section is compiled once into a {@link RuleClassifier}: keyword blocks become a
+ * single {@link KeywordMatcher}, regex blocks are precompiled and conditions become predicates.
+ */
+public class RuleFile {
+    /** The rules used without {@code --rules}, shipped next to the classes. */
+    public static final String DEFAULT_RESOURCE = "/rules/classifiers.rules";
+    
+    private final Path path;
+    private final Map<String, RuleClassifier> classifiers;
+    
+    private RuleFile(Path path, Map<String, RuleClassifier> classifiers) {
+        this.path = path;
+        this.classifiers = classifiers;
+    }
+    
+    /**
+     * @throws IllegalArgumentException if the file is malformed; the message names the line
+     */
+    public static RuleFile load(Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("Rules file not found: " + path);
+        }
+        return parse(path, path.getFileName().toString(), Files.readAllLines(path));
+    }
+    
+    /** The default rules from {@link #DEFAULT_RESOURCE} on the class path, wherever the engine runs. */
+    public static RuleFile loadDefault() throws IOException {
+        try (InputStream in = RuleFile.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Default rules " + DEFAULT_RESOURCE + " are not on the class path; "
+                    + "copy rules/ next to the compiled classes or pass --rules <file>");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return parse(null, "classifiers.rules", reader.lines().toList());
+        }
+    }
+    
+    /** Loads these rules again from where they came from, e.g. after the file was edited. */
+    public RuleFile reload() throws IOException {
+        return path != null ? load(path) : loadDefault();
+    }
+    
+    private static RuleFile parse(Path path, String name, List<String> lines) {
+        Map<String, RuleClassifier> classifiers = new LinkedHashMap<>();
+        Section section = null;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = stripTrailing(lines.get(i));
+            if (line.isBlank() || line.trim().startsWith("#")) {
+                continue;
+            }
+            Location location = new Location(name, i + 1);
+            if (line.startsWith("[") && line.endsWith("]")) {
+                if (section != null) {
+                    classifiers.put(section.category, section.compile());
+                }
+                String category = line.substring(1, line.length() - 1).trim();
+                if (category.isEmpty() || classifiers.containsKey(category)) {
+                    throw location.error("Empty or repeated section [" + category + "]");
+                }
+                section = new Section(category, location);
+            } else if (section == null) {
+                throw location.error("Expected a [category] section");
+            } else {
+                section.add(line, location);
+            }
+        }
+        if (section != null) {
+            classifiers.put(section.category, section.compile());
+        }
+        return new RuleFile(path, classifiers);
+    }
+    
+    /** The rules file, or null for the default rules. */
+    public Path getPath() {
+        return path;
+    }
+    
+    public List<Classifier> getClassifiers() {
+        return new ArrayList<>(classifiers.values());
+    }
+    
+    /** Categories that were added, removed or defined differently since {@code previous}. */
+    public Set<String> changedSince(RuleFile previous) {
+        return changedSince(previous.getDefinitionHashes());
+    }
+    
+    /** Like {@link #changedSince(RuleFile)}, for rules known only by their {@link #getDefinitionHashes()}. */
+    public Set<String> changedSince(Map<String, String> previousHashes) {
+        Map<String, String> hashes = getDefinitionHashes();
+        Set<String> changed = new LinkedHashSet<>();
+        hashes.forEach((category, hash) -> {
+            if (!hash.equals(previousHashes.get(category))) {
+                changed.add(category);
+            }
+        });
+        for (String category : previousHashes.keySet()) {
+            if (!hashes.containsKey(category)) {
+                changed.add(category);
+            }
+        }
+        return changed;
+    }
+    
+    /** The SHA-256 of every category's definition, which changes exactly when its classification does. */
+    public Map<String, String> getDefinitionHashes() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (RuleClassifier classifier : classifiers.values()) {
+            byte[] hash = digest.digest(classifier.getDefinition().getBytes(StandardCharsets.UTF_8));
+            hashes.put(classifier.getCategoryName(), HexFormat.of().formatHex(hash));
+        }
+        return hashes;
+    }
+    
+    private static String stripTrailing(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+    
+    private static final class Location {
+        private final String name;
+        private final int line;
+        
+        Location(String name, int line) {
+            this.name = name;
+            this.line = line;
+        }
+        
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(name + ":" + line + ": " + message);
+        }
+    }
+    
+    private static final class Block {
+        private final String name;
+        private final Location location;
+        private final List<String> lines = new ArrayList<>();
+        private final List<Location> lineLocations = new ArrayList<>();
+        
+        Block(String name, Location location) {
+            this.name = name;
+            this.location = location;
+        }
+    }
+    
+    private static final class Section {
+        private final String category;
+        private final Location location;
+        private final StringBuilder definition = new StringBuilder();
+        private final Map<String, Block> keywords = new LinkedHashMap<>();
+        private final Map<String, Block> regexes = new LinkedHashMap<>();
+        private final List<Block> rules = new ArrayList<>();
+        private Integer threshold;
+        private Block current;
+        
+        Section(String category, Location location) {
+            this.category = category;
+            this.location = location;
+        }
+        
+        void add(String line, Location location) {
+            definition.append(line).append('\n');
+            if (Character.isWhitespace(line.charAt(0))) {
+                if (current == null) {
+                    throw location.error("Indented line outside a keywords, regex or rule block");
+                }
+                current.lines.add(line.trim());
+                current.lineLocations.add(location);
+                return;
+            }
+            
+            String[] words = line.split("\\s+");
+            current = null;
+            if (words[0].equals("threshold") && words.length == 2) {
+                threshold = parseInt(words[1], location);
+                return;
+            }
+            if (words.length != 2) {
+                throw location.error("Expected 'threshold <n>', 'keywords <name>', 'regex <name>' or 'rule <name>'");
+            }
+            Block block = new Block(words[1], location);
+            switch (words[0]) {
+                case "keywords":
+                    if (keywords.put(block.name, block) != null) {
+                        throw location.error("Repeated keywords block '" + block.name + "'");
+                    }
+                    break;
+                case "regex":
+                    if (regexes.put(block.name, block) != null) {
+                        throw location.error("Repeated regex block '" + block.name + "'");
+                    }
+                    break;
+                case "rule":
+                    rules.add(block);
+                    break;
+                default:
+                    throw location.error("Unknown directive '" + words[0] + "'");
+            }
+            current = block;
+        }
+        
+        RuleClassifier compile() {
+            if (threshold == null) {
+                throw location.error("Section [" + category + "] has no threshold");
+            }
+            
+            Map<String, Integer> keywordGroups = new LinkedHashMap<>();
+            String[][] groups = new String[keywords.size()][];
+            for (Block block : keywords.values()) {
+                if (block.lines.isEmpty()) {
+                    throw block.location.error("Keywords block '" + block.name + "' is empty");
+                }
+                groups[keywordGroups.size()] = block.lines.toArray(new String[0]);
+                keywordGroups.put(block.name, keywordGroups.size());
+            }
+            
+            Map<String, Pattern> patterns = new LinkedHashMap<>();
+            for (Block block : regexes.values()) {
+                if (block.lines.size() != 1) {
+                    throw block.location.error("Regex block '" + block.name + "' must hold exactly one pattern");
+                }
+                try {
+                    patterns.put(block.name, Pattern.compile(block.lines.get(0)));
+                } catch (PatternSyntaxException e) {
+                    throw block.location.error("Invalid regex '" + block.name + "': " + e.getDescription());
+                }
+            }
+            
+            Set<String> dependencies = new LinkedHashSet<>();
+            RuleSet.Rule[] compiled = new RuleSet.Rule[rules.size()];
+            for (int r = 0; r < rules.size(); r++) {
+                Block block = rules.get(r);
+                if (block.lines.isEmpty()) {
+                    throw block.location.error("Rule '" + block.name + "' has no clauses");
+                }
+                Clause[] clauses = new Clause[block.lines.size()];
+                int maxPoints = 0;
+                RuleSet.Cost cost = RuleSet.Cost.FIELD;
+                for (int c = 0; c < clauses.length; c++) {
+                    clauses[c] = new Clause(block.lines.get(c), block.lineLocations.get(c), keywordGroups, patterns,
+                        dependencies);
+                    maxPoints = Math.max(maxPoints, clauses[c].points);
+                    if (clauses[c].cost.compareTo(cost) > 0) {
+                        cost = clauses[c].cost;
+                    }
+                }
+                compiled[r] = RuleSet.rule(block.name, maxPoints, cost, evaluation -> {
+                    for (Clause clause : clauses) {
+                        if (clause.test(evaluation)) {
+                            return clause.points;
+                        }
+                    }
+                    return 0;
+                });
+            }
+            
+            KeywordMatcher matcher = groups.length > 0 ? new KeywordMatcher(groups) : null;
+            return new RuleClassifier(category, dependencies, new RuleSet(threshold, matcher, compiled),
+                definition.toString());
+        }
+    }
+    
+    /** One {@code <condition> [and <condition> ...] -> <points>} line of a rule. */
+    private static final class Clause {
+        private final List<Predicate<RuleSet.Evaluation>> conditions = new ArrayList<>();
+        private final int points;
+        private RuleSet.Cost cost = RuleSet.Cost.FIELD;
+        
+        Clause(String text, Location location, Map<String, Integer> keywordGroups, Map<String, Pattern> patterns,
+               Set<String> dependencies) {
+            int arrow = text.lastIndexOf("->");
+            if (arrow < 0) {
+                throw location.error("Expected '<condition> -> <points>'");
+            }
+            this.points = parseInt(text.substring(arrow + 2).trim(), location);
+            if (points < 0) {
+                throw location.error("Points must not be negative");
+            }
+            
+            List<String> words = new ArrayList<>(Arrays.asList(text.substring(0, arrow).trim().split("\\s+")));
+            int start = 0;
+            for (int i = 0; i <= words.size(); i++) {
+                if (i == words.size() || words.get(i).equals("and")) {
+                    if (i == start) {
+                        throw location.error("Empty condition");
+                    }
+                    conditions.add(condition(words.subList(start, i), location, keywordGroups, patterns, dependencies));
+                    start = i + 1;
+                }
+            }
+        }
+        
+        boolean test(RuleSet.Evaluation evaluation) {
+            for (Predicate<RuleSet.Evaluation> condition : conditions) {
+                if (!condition.test(evaluation)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private Predicate<RuleSet.Evaluation> condition(List<String> words, Location location,
+                                                        Map<String, Integer> keywordGroups,
+                                                        Map<String, Pattern> patterns, Set<String> dependencies) {
+            String head = words.get(0);
+            switch (head) {
+                case "has": {
+                    expectLength(words, 2, location);
+                    Metric metric = metric(words.get(1), location);
+                    return e -> e.getFeatures().has(metric);
+                }
+                case "chat_disabled":
+                    expectLength(words, 1, location);
+                    return e -> e.getFeatures().isContactChatDisabled();
+                case "category": {
+                    expectLength(words, 2, location);
+                    String category = words.get(1);
+                    dependencies.add(category);
+                    return e -> e.getProfile().hasCategory(category);
+                }
+                case "slug_contains": {
+                    if (words.size() < 2) {
+                        throw location.error("slug_contains needs at least one fragment");
+                    }
+                    String[] fragments = words.subList(1, words.size()).toArray(new String[0]);
+                    return e -> e.getFeatures().hasCategorySlugContaining(fragments);
+                }
+                case "hits": {
+                    expectLength(words, 4, location);
+                    Integer group = keywordGroups.get(words.get(1));
+                    if (group == null) {
+                        throw location.error("Unknown keywords block '" + words.get(1) + "'");
+                    }
+                    raiseCost(RuleSet.Cost.KEYWORDS);
+                    if (words.get(2).equals(">=") && words.get(3).equals("1")) {
+                        // Finding one hit is cheaper than counting them all.
+                        return e -> e.getHits().any(group);
+                    }
+                    Comparison comparison = comparison(words.get(2), words.get(3), location);
+                    return e -> comparison.test(e.getHits().count(group));
+                }
+                case "matches": {
+                    expectLength(words, 2, location);
+                    Pattern pattern = patterns.get(words.get(1));
+                    if (pattern == null) {
+                        throw location.error("Unknown regex block '" + words.get(1) + "'");
+                    }
+                    raiseCost(RuleSet.Cost.REGEX);
+                    return e -> pattern.matcher(e.getText()).matches();
+                }
+                default:
+                    return metricComparison(words, location);
+            }
+        }
+        
+        private Predicate<RuleSet.Evaluation> metricComparison(List<String> words, Location location) {
+            // <metric> [+ <metric> ...] <op> <number>
+            if (words.size() < 3 || words.size() % 2 == 0) {
+                throw location.error("Expected '<metric> [+ <metric> ...] <op> <number>'");
+            }
+            Metric[] metrics = new Metric[(words.size() - 1) / 2];
+            for (int i = 0; i < metrics.length; i++) {
+                if (i > 0 && !words.get(2 * i - 1).equals("+")) {
+                    throw location.error("Expected '+' between metrics");
+                }
+                metrics[i] = metric(words.get(2 * i), location);
+            }
+            Comparison comparison = comparison(words.get(words.size() - 2), words.get(words.size() - 1), location);
+            return e -> {
+                long sum = 0;
+                for (Metric metric : metrics) {
+                    sum += e.getFeatures().get(metric);
+                }
+                return comparison.test(sum);
+            };
+        }
+        
+        private void raiseCost(RuleSet.Cost cost) {
+            if (cost.compareTo(this.cost) > 0) {
+                this.cost = cost;
+            }
+        }
+    }
+    
+    private interface Comparison {
+        boolean test(long value);
+    }
+    
+    private static Comparison comparison(String operator, String operand, Location location) {
+        long bound;
+        try {
+            bound = Long.parseLong(operand);
+        } catch (NumberFormatException e) {
+            throw location.error("Expected a number, got '" + operand + "'");
+        }
+        switch (operator) {
+            case ">=":
+                return value -> value >= bound;
+            case ">":
+                return value -> value > bound;
+            case "<=":
+                return value -> value <= bound;
+            case "<":
+                return value -> value < bound;
+            case "==":
+                return value -> value == bound;
+            case "!=":
+                return value -> value != bound;
+            default:
+                throw location.error("Unknown comparison '" + operator + "'");
+        }
+    }
+    
+    private static Metric metric(String key, Location location) {
+        Metric metric = Metric.fromKey(key);
+        if (metric == null) {
+            throw location.error("Unknown metric '" + key + "'");
+        }
+        return metric;
+    }
+    
+    private static void expectLength(List<String> words, int length, Location location) {
+        if (words.size() != length) {
+            throw location.error("Malformed condition '" + String.join(" ", words) + "'");
+        }
+    }
+    
+    private static int parseInt(String text, Location location) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw location.error("Expected a number, got '" + text + "'");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package classifier;
+
+import metrics.RuleStats;
+import model.ProfileFeatures;
+import model.UserProfile;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Additive scoring rules with a match threshold. Rules run cheapest first (highest weight first
+ * within a cost), and evaluation stops as soon as the score has reached the threshold or the
+ * remaining rules can no longer lift it there, so the outcome is the same as summing every rule.
+ */
+public class RuleSet {
+    
+    /** Relative cost of a rule, as measured by the classifier benchmarks. */
+    public enum Cost {
+        /** Metric, slug or category lookups: a few nanoseconds. */
+        FIELD,
+        /** Reads keyword hits; the first such rule pays for the shared keyword scan of the text. */
+        KEYWORDS,
+        /** Runs its own regular expression over the text. */
+        REGEX
+    }
+    
+    public interface Scorer {
+        /** Returns between 0 and the rule's max points. */
+        int score(Evaluation evaluation);
+    }
+    
+    public static final class Rule {
+        private final String name;
+        private final int maxPoints;
+        private final Cost cost;
+        private final Scorer scorer;
+        
+        private Rule(String name, int maxPoints, Cost cost, Scorer scorer) {
+            this.name = name;
+            this.maxPoints = maxPoints;
+            this.cost = cost;
+            this.scorer = scorer;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getMaxPoints() {
+            return maxPoints;
+        }
+        
+        public Cost getCost() {
+            return cost;
+        }
+    }
+    
+    public static Rule rule(String name, int maxPoints, Cost cost, Scorer scorer) {
+        return new Rule(name, maxPoints, cost, scorer);
+    }
+    
+    private final int threshold;
+    private final KeywordMatcher keywords;
+    private final Rule[] rules;
+    private final int[] remainingPoints;
+    private final RuleStats stats = new RuleStats();
+    
+    public RuleSet(int threshold, KeywordMatcher keywords, Rule... rules) {
+        this.threshold = threshold;
+        this.keywords = keywords;
+        this.rules = rules.clone();
+        Arrays.sort(this.rules, Comparator.comparing(Rule::getCost)
+            .thenComparing(Comparator.comparingInt(Rule::getMaxPoints).reversed()));
+        this.remainingPoints = new int[this.rules.length + 1];
+        for (int i = this.rules.length - 1; i >= 0; i--) {
+            remainingPoints[i] = remainingPoints[i + 1] + this.rules[i].maxPoints;
+        }
+    }
+    
+    public boolean matches(UserProfile profile) {
+        Evaluation evaluation = new Evaluation(profile, keywords);
+        int score = 0;
+        int next = 0;
+        while (next < rules.length && score < threshold && score + remainingPoints[next] >= threshold) {
+            score += rules[next++].scorer.score(evaluation);
+        }
+        stats.record(next, rules.length - next, evaluation.hits != null);
+        return score >= threshold;
+    }
+    
+    /**
+     * Returns the full score of a matching profile, or {@link Classifier#NO_MATCH}. Only the
+     * "cannot reach the threshold" exit applies here, since a match needs every rule for its score.
+     */
+    public int evaluate(UserProfile profile) {
+        Evaluation evaluation = new Evaluation(profile, keywords);
+        int score = 0;
+        int next = 0;
+        while (next < rules.length && score + remainingPoints[next] >= threshold) {
+            score += rules[next++].scorer.score(evaluation);
+        }
+        stats.record(next, rules.length - next, evaluation.hits != null);
+        return score >= threshold ? score : Classifier.NO_MATCH;
+    }
+    
+    /** Sums every rule, without early exit. */
+    public int score(UserProfile profile) {
+        Evaluation evaluation = new Evaluation(profile, keywords);
+        int score = 0;
+        for (Rule rule : rules) {
+            score += rule.scorer.score(evaluation);
+        }
+        return score;
+    }
+    
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    public int getMaxScore() {
+        return remainingPoints[0];
+    }
+    
+    public RuleStats getStats() {
+        return stats;
+    }
+    
+    public static final class Evaluation {
+        private final UserProfile profile;
+        private final ProfileFeatures features;
+        private final KeywordMatcher keywords;
+        private KeywordMatcher.Hits hits;
+        
+        private Evaluation(UserProfile profile, KeywordMatcher keywords) {
+            this.profile = profile;
+            this.features = profile.getFeatures();
+            this.keywords = keywords;
+        }
+        
+        public UserProfile getProfile() {
+            return profile;
+        }
+        
+        public ProfileFeatures getFeatures() {
+            return features;
+        }
+        
+        public String getText() {
+            return features.getNormalizedText();
+        }
+        
+        public KeywordMatcher.Hits getHits() {
+            if (hits == null) {
+                hits = keywords.match(features.getNormalizedText());
+            }
+            return hits;
+        }
+    }
+}
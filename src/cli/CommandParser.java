@@ -10,6 +10,23 @@ public class CommandParser {
         String trimmed = input.trim();
         String[] parts = trimmed.split("\\s+");
         
+        if (parts[0].equals("STATS") && parts.length == 1) {
+            return new ParsedCommand(CommandType.STATS, new String[0]);
+        }
+        
+        if (parts[0].equals("STATS") && parts.length == 3
+                && parts[1].equals("BY") && parts[2].equalsIgnoreCase("category")) {
+            return new ParsedCommand(CommandType.STATS_BY_CATEGORY, new String[0]);
+        }
+        
+        if (parts[0].equals("OVERLAP") && parts.length == 1) {
+            return new ParsedCommand(CommandType.OVERLAP, new String[0]);
+        }
+        
+        if (parts[0].equals("RELOAD_RULES") && parts.length <= 2) {
+            return new ParsedCommand(CommandType.RELOAD_RULES, parts.length == 2 ? new String[]{parts[1]} : new String[0]);
+        }
+        
         if (parts.length < 2) {
             return new ParsedCommand(CommandType.INVALID, parts);
         }
@@ -17,8 +34,18 @@ public class CommandParser {
         String command = parts[0];
         
         if (command.equals("FIND") && parts.length >= 2) {
-            String category = parts[1];
-            return new ParsedCommand(CommandType.FIND, new String[]{category});
+            String expression = trimmed.substring(command.length()).trim();
+            return new ParsedCommand(CommandType.FIND, new String[]{expression});
+        }
+        
+        if (command.equals("FILTER") && parts.length >= 2) {
+            String expression = trimmed.substring(command.length()).trim();
+            return new ParsedCommand(CommandType.FILTER, new String[]{expression});
+        }
+        
+        if (command.equals("SEARCH") && parts.length >= 2) {
+            String query = trimmed.substring(command.length()).trim();
+            return new ParsedCommand(CommandType.SEARCH, new String[]{query});
         }
         
         if (command.equals("GET_USER_PROFILE") && parts.length >= 2) {
@@ -38,6 +65,20 @@ public class CommandParser {
             return new ParsedCommand(CommandType.REMOVE_TAG, new String[]{tag, userId});
         }
         
+        if (command.equals("TOP") && (parts.length == 3
+                || parts.length == 5 && parts[3].equals("BY") && parts[4].equalsIgnoreCase("score"))) {
+            return new ParsedCommand(CommandType.TOP, new String[]{parts[1], parts[2]});
+        }
+        
+        if (command.equals("HISTOGRAM") && parts.length == 2) {
+            return new ParsedCommand(CommandType.HISTOGRAM, new String[]{parts[1]});
+        }
+        
+        if (command.equals("SAVE_SNAPSHOT") && parts.length >= 2) {
+            String file = trimmed.substring(command.length()).trim();
+            return new ParsedCommand(CommandType.SAVE_SNAPSHOT, new String[]{file});
+        }
+        
         return new ParsedCommand(CommandType.INVALID, parts);
     }
     
@@ -61,9 +102,18 @@ public class CommandParser {
     
     public enum CommandType {
         FIND,
+        FILTER,
+        SEARCH,
         ADD_TAG,
         REMOVE_TAG,
         GET_USER_PROFILE,
+        TOP,
+        SAVE_SNAPSHOT,
+        STATS,
+        STATS_BY_CATEGORY,
+        OVERLAP,
+        HISTOGRAM,
+        RELOAD_RULES,
         INVALID
     }
 }
@@ -2,15 +2,42 @@ package cli;
 
 import config.Config;
 import engine.QueryEngine;
+import metrics.CacheStats;
+import metrics.EngineMetrics;
+import metrics.EngineStats;
+import metrics.LatencySummary;
+import metrics.RuleStats;
+import model.Metric;
+import query.Aggregator;
+import query.FindRequest;
+import query.FindResult;
+import query.Histogram;
+import query.OverlapMatrix;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
 import java.util.Set;
 
 public class QueryExecutor {
+    /** Ends the reply to every command; the server's line protocol frames replies by it. */
+    public static final String SEPARATOR = "─────────────────────────────────────────────────────────────";
+    
     private final QueryEngine engine;
-    private static final String SEPARATOR = "─────────────────────────────────────────────────────────────";
+    private final PrintStream target;
+    /** Where text other than the printer's fields goes: the target, or its line fields in the reply format. */
+    private PrintStream out;
+    private ResultPrinter printer;
     
     public QueryExecutor(QueryEngine engine) {
+        this(engine, System.out);
+    }
+    
+    public QueryExecutor(QueryEngine engine, PrintStream out) {
         this.engine = engine;
+        this.target = out;
+        this.out = out;
+        this.printer = new ResultPrinter(out);
     }
     
     public void execute(CommandParser.ParsedCommand command) {
@@ -18,12 +45,17 @@ public class QueryExecutor {
             return;
         }
         
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         String[] args = command.getArguments();
         
         switch (command.getType()) {
             case FIND:
-                handleFind(args[0]);
+            case FILTER:
+                handleFind(command.getType(), args[0]);
+                break;
+                
+            case SEARCH:
+                handleSearch(args[0]);
                 break;
                 
             case ADD_TAG:
@@ -38,94 +70,288 @@ public class QueryExecutor {
                 handleGetUserProfile(args[0]);
                 break;
                 
+            case TOP:
+                handleTop(args[0], args[1]);
+                break;
+                
+            case SAVE_SNAPSHOT:
+                handleSaveSnapshot(args[0]);
+                break;
+                
+            case STATS:
+                handleStats();
+                break;
+                
+            case STATS_BY_CATEGORY:
+                handleStatsByCategory();
+                break;
+                
+            case OVERLAP:
+                handleOverlap();
+                break;
+                
+            case HISTOGRAM:
+                handleHistogram(args[0]);
+                break;
+                
+            case RELOAD_RULES:
+                handleReloadRules(args.length > 0 ? args[0] : null);
+                break;
+                
             case INVALID:
                 printError("Invalid command format");
                 break;
         }
         
+        long elapsed = System.nanoTime() - startTime;
+        engine.getMetrics().command(command.getType().name()).record(elapsed);
         if (Config.isShowExecutionTime()) {
-            long endTime = System.currentTimeMillis();
-            double duration = (endTime - startTime) / 1000.0;
-            System.out.println(String.format("⏱  Query executed in %.3f seconds", duration));
+            printer.timing(elapsed);
         }
         
-        System.out.println(SEPARATOR);
+        target.println(SEPARATOR);
     }
     
-    private void handleFind(String category) {
-        Set<String> users = engine.findByCategory(category);
-        
-        if (users.isEmpty()) {
-            users = engine.findByTag(category);
+    /** Answers in the {@link ReplyPrinter} format from now on, for a shard coordinator's connection. */
+    public void useReplyFormat() {
+        printer = new ReplyPrinter(target);
+        out = ReplyPrinter.lines(target);
+    }
+    
+    /** Answers a line the caller handled itself, such as a refused command, framed like a command reply. */
+    public void reject(String message) {
+        printError(message);
+        target.println(SEPARATOR);
+    }
+    
+    public void acknowledge(String message) {
+        printSuccess(message);
+        target.println(SEPARATOR);
+    }
+    
+    private void handleFind(CommandParser.CommandType type, String command) {
+        FindRequest request;
+        FindResult result;
+        try {
+            request = FindRequest.parse(command);
+            result = type == CommandParser.CommandType.FILTER ? engine.filter(request) : engine.find(request);
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
         }
+        printer.find(type, command, request, result);
+    }
+    
+    private void handleSearch(String query) {
+        FindResult result;
+        try {
+            result = engine.search(query);
+        } catch (IllegalArgumentException e) {
+            printError(e.getMessage());
+            return;
+        }
+        printer.search(query, result);
+    }
+    
+    private void handleAddTag(String tag, String userId) {
+        boolean success;
+        try {
+            success = engine.addTag(userId, tag);
+        } catch (IOException e) {
+            printError("Tag log write failed: " + e.getMessage());
+            return;
+        }
+        printer.addTag(userId, tag, success);
+    }
+    
+    private void handleRemoveTag(String tag, String userId) {
+        boolean success;
+        try {
+            success = engine.removeTag(userId, tag);
+        } catch (IOException e) {
+            printError("Tag log write failed: " + e.getMessage());
+            return;
+        }
+        printer.removeTag(userId, tag, success);
+    }
+    
+    private void handleGetUserProfile(String userId) {
+        printer.header("GET_USER_PROFILE: " + userId);
         
-        int totalUsers = engine.getTotalUsers();
-        double percentage = totalUsers > 0 ? (users.size() * 100.0 / totalUsers) : 0.0;
-        
-        System.out.println("┌─ FIND: " + category);
-        System.out.println("└─ ");
-        
-        if (users.isEmpty()) {
-            System.out.println("   (no users found)");
-        } else {
-            for (String userId : users) {
-                System.out.println("   • " + userId);
+        try {
+            if (engine.writeUserProfile(userId, out)) {
+                out.println();
+            } else {
+                printError("User " + userId + " not found");
             }
+        } catch (IOException e) {
+            printError("Could not read profile of " + userId + ": " + e.getMessage());
+        }
+    }
+    
+    private void handleTop(String count, String category) {
+        int k;
+        try {
+            k = Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            printError("TOP needs a number of users, got '" + count + "'");
+            return;
+        }
+        if (k < 1) {
+            printError("TOP needs at least 1 user, got " + k);
+            return;
         }
+        printer.top(k, category, engine.top(category, k));
+    }
+    
+    private void handleSaveSnapshot(String file) {
+        printer.header("SAVE_SNAPSHOT: " + file);
         
-        System.out.println();
-        System.out.println("├─ Results: " + users.size() + " user(s) out of " + totalUsers);
-        System.out.println("└─ Percentage: " + String.format("%.2f%%", percentage));
+        try {
+            long bytes = engine.saveSnapshot(file);
+            printSuccess("Saved " + engine.getTotalUsers() + " user(s) in " + bytes + " bytes");
+        } catch (IOException e) {
+            printError("Could not write snapshot: " + e.getMessage());
+        }
     }
     
-    private void handleAddTag(String tag, String userId) {
-        boolean success = engine.addTag(userId, tag);
+    private void handleReloadRules(String file) {
+        printer.header("RELOAD_RULES" + (file != null ? ": " + file : ""));
         
-        System.out.println("┌─ ADD_TAG");
-        System.out.println("├─ User: " + userId);
-        System.out.println("├─ Tag: " + tag);
-        System.out.println("└─ ");
+        Set<String> reclassified;
+        try {
+            reclassified = engine.reloadRules(file);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            printError("Rules not reloaded: " + e.getMessage());
+            return;
+        }
         
-        if (success) {
-            printSuccess("Tag '" + tag + "' added to " + userId);
+        if (reclassified.isEmpty()) {
+            printSuccess("No classifier changed");
         } else {
-            printError("User " + userId + " not found");
+            printSuccess("Reclassified " + engine.getTotalUsers() + " user(s) for " + String.join(", ", reclassified));
         }
     }
     
-    private void handleRemoveTag(String tag, String userId) {
-        boolean success = engine.removeTag(userId, tag);
+    private void handleStats() {
+        EngineStats stats = engine.getStats();
+        EngineMetrics metrics = engine.getMetrics();
         
-        System.out.println("┌─ REMOVE_TAG");
-        System.out.println("├─ User: " + userId);
-        System.out.println("├─ Tag: " + tag);
-        System.out.println("└─ ");
+        printer.header("STATS");
+        out.println(String.format("   %-20s %8s %10s %10s %10s %10s", "Command", "count", "p50", "p99", "p99.9", "max"));
+        stats.getCommandLatencies().forEach((command, latency) ->
+            out.println(String.format("   %-20s %8d %10s %10s %10s %10s", command, latency.getCount(),
+                formatNanos(latency.getP50Nanos()), formatNanos(latency.getP99Nanos()),
+                formatNanos(latency.getP999Nanos()), formatNanos(latency.getMaxNanos()))));
         
-        if (success) {
-            printSuccess("Tag '" + tag + "' removed from " + userId);
-        } else {
-            printError("Tag '" + tag + "' not found on " + userId);
-        }
+        out.println();
+        out.println(String.format("   %-20s %8s %10s", "Load phase", "items", "time"));
+        metrics.getLoadPhases().forEach((phase, phaseStats) ->
+            out.println(String.format("   %-20s %8d %10s", phase, phaseStats.getItems(),
+                formatNanos(phaseStats.getNanos()))));
+        LatencySummary parse = LatencySummary.of(metrics.getParseLatency());
+        out.println(String.format("   %-20s %8d %10s p50 / %s p99", "parse", parse.getCount(),
+            formatNanos(parse.getP50Nanos()), formatNanos(parse.getP99Nanos())));
+        
+        out.println();
+        out.println(String.format("   %-20s %8s %8s %10s %10s %10s %10s", "Classifier", "matched", "rate", "mean", "p99",
+            "rules skip", "scan skip"));
+        metrics.getClassifiers().forEach((name, classifier) -> {
+            RuleStats rules = classifier.getRules();
+            out.println(String.format("   %-20s %8d %7.2f%% %10s %10s %10s %10s", name, classifier.getMatches(),
+                classifier.getMatchRate() * 100, formatNanos((long) classifier.getLatency().getMeanNanos()),
+                formatNanos(classifier.getLatency().getPercentile(99)),
+                rules != null ? String.format("%.1f%%", rules.getRuleSkipRate() * 100) : "-",
+                rules != null ? String.format("%.1f%%", rules.getScanSkipRate() * 100) : "-"));
+        });
+        
+        out.println();
+        out.println("├─ Users: " + stats.getUserCount() + ", tags: " + stats.getTagCount()
+            + ", text terms: " + stats.getTermCount() + ", index memory: " + String.format("%.1f KB", stats.getIndexBytes() / 1024.0));
+        CacheStats cache = metrics.getResultCache();
+        out.println("├─ Result cache: " + cache.getEntries() + " entries, "
+            + String.format("%.1f KB", cache.getBytes() / 1024.0) + ", " + cache.getHits() + " hits / "
+            + cache.getMisses() + " misses (" + String.format("%.1f%%", cache.getHitRate() * 100) + "), "
+            + cache.getInvalidations() + " invalidated, " + cache.getEvictions() + " evicted");
+        stats.getCategorySizes().forEach((category, size) ->
+            out.println("   • " + category + ": " + size + " user(s)"));
     }
     
-    private void handleGetUserProfile(String userId) {
-        String profile = engine.getUserProfile(userId);
+    private void handleStatsByCategory() {
+        Aggregator aggregator = engine.aggregate();
+        printer.statsByCategory(aggregator.counts(), aggregator.countUncategorized(), aggregator.getUserCount());
+    }
+    
+    private void handleOverlap() {
+        OverlapMatrix matrix = engine.aggregate().overlap();
+        List<String> labels = matrix.getLabels();
         
-        System.out.println("┌─ GET_USER_PROFILE: " + userId);
-        System.out.println("└─ ");
+        printer.header("OVERLAP");
+        if (labels.isEmpty()) {
+            out.println("   (no categories or tags)");
+            return;
+        }
+        StringBuilder header = new StringBuilder(String.format("   %3s %-24s", "#", "Category / tag"));
+        for (int column = 0; column < labels.size(); column++) {
+            header.append(String.format(" %7d", column + 1));
+        }
+        out.println(header);
+        for (int row = 0; row < labels.size(); row++) {
+            StringBuilder line = new StringBuilder(String.format("   %3d %-24s", row + 1, labels.get(row)));
+            for (int column = 0; column < labels.size(); column++) {
+                line.append(String.format(" %7d", matrix.getCount(row, column)));
+            }
+            out.println(line);
+        }
+    }
+    
+    private void handleHistogram(String metricKey) {
+        Metric metric = Metric.fromKey(metricKey);
+        if (metric == null) {
+            printError("Unknown metric '" + metricKey + "'");
+            return;
+        }
+        Histogram histogram = engine.aggregate().histogram(metric);
         
-        if (profile != null) {
-            System.out.println(profile);
+        printer.header("HISTOGRAM " + metricKey);
+        long largest = 0;
+        for (int bucket = histogram.getFirstBucket(); bucket <= histogram.getLastBucket(); bucket++) {
+            largest = Math.max(largest, histogram.getCount(bucket));
+        }
+        for (int bucket = histogram.getFirstBucket(); bucket <= histogram.getLastBucket(); bucket++) {
+            long low = Histogram.getLowerBound(bucket);
+            long high = Histogram.getUpperBound(bucket);
+            long count = histogram.getCount(bucket);
+            out.println(String.format("   %-28s %8d  %s", low == high ? String.valueOf(low) : low + " - " + high, count,
+                "█".repeat((int) (count * 40 / largest))));
+        }
+        out.println();
+        if (histogram.getUsers() > 0) {
+            out.println(String.format("├─ Users with %s: %d (missing %d), min %d, max %d, mean %.1f", metricKey,
+                histogram.getUsers(), histogram.getMissing(), histogram.getMin(), histogram.getMax(), histogram.getMean()));
         } else {
-            printError("User " + userId + " not found");
+            out.println("├─ No user has " + metricKey + " (missing " + histogram.getMissing() + ")");
+        }
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1f µs", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
         }
+        return String.format("%.2f s", nanos / 1e9);
     }
     
     private void printSuccess(String message) {
-        System.out.println("   ✓ " + message);
+        printer.success(message);
     }
     
     private void printError(String message) {
-        System.out.println("   ✗ ERROR: " + message);
+        printer.error(message);
     }
 }
@@ -0,0 +1,159 @@
+package cli;
+
+import query.FindRequest;
+import query.FindResult;
+import query.ScoredUser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints replies for a shard coordinator rather than a person: no headers, boxes or timings, and
+ * one field per line as its key, a space and the value, so the coordinator reads fields instead of
+ * the console layout. A failed command answers with an {@code error} field; text such as a profile
+ * or STATS table is passed through as one {@code line} field per line, so no text can pass for a
+ * field or the separator.
+ */
+public final class ReplyPrinter extends ResultPrinter {
+    /** Matching users in the shard. */
+    public static final String TOTAL = "total";
+    /** Users in the shard. */
+    public static final String USERS = "users";
+    /** Zero-based position of the first listed user among all matches. */
+    public static final String POSITION = "position";
+    public static final String USER = "user";
+    /** A TOP row: the score, a space and the user id. */
+    public static final String SCORED = "scored";
+    /** A STATS BY category row: the count, a space and the category or {@code tag:} label. */
+    public static final String COUNT = "count";
+    public static final String UNCATEGORIZED = "uncategorized";
+    public static final String OK = "ok";
+    public static final String ERROR = "error";
+    /** A line of text passed through, such as a line of a profile. */
+    public static final String LINE = "line";
+    
+    private final PrintStream out;
+    
+    ReplyPrinter(PrintStream out) {
+        super(out);
+        this.out = out;
+    }
+    
+    /** A stream that writes every line of text printed to it as a {@link #LINE} field of {@code out}. */
+    static PrintStream lines(PrintStream out) {
+        return new PrintStream(new LinePrefixer(out), false, out.charset());
+    }
+    
+    /** The value of {@code line} if it is the field {@code key}, otherwise null. */
+    public static String valueOf(String line, String key) {
+        if (line.startsWith(key) && (line.length() == key.length() || line.charAt(key.length()) == ' ')) {
+            return line.length() == key.length() ? "" : line.substring(key.length() + 1);
+        }
+        return null;
+    }
+    
+    @Override
+    void find(CommandParser.CommandType type, String command, FindRequest request, FindResult result) {
+        field(TOTAL, result.getTotal());
+        field(USERS, result.getUserCount());
+        field(POSITION, result.getFirstPosition());
+        if (!request.isCountOnly()) {
+            result.getUserIds().forEach(userId -> field(USER, userId));
+        }
+    }
+    
+    @Override
+    void search(String query, FindResult result) {
+        field(TOTAL, result.getTotal());
+        field(USERS, result.getUserCount());
+        result.getUserIds().forEach(userId -> field(USER, userId));
+    }
+    
+    @Override
+    void tagHeader(String command, String userId, String tag) {
+    }
+    
+    @Override
+    void top(int k, String category, List<ScoredUser> users) {
+        users.forEach(user -> field(SCORED, user.getScore() + " " + user.getUserId()));
+    }
+    
+    @Override
+    void statsByCategory(Map<String, Integer> counts, int uncategorized, int totalUsers) {
+        counts.forEach((label, count) -> field(COUNT, count + " " + label));
+        field(UNCATEGORIZED, uncategorized);
+        field(USERS, totalUsers);
+    }
+    
+    @Override
+    void header(String title) {
+    }
+    
+    @Override
+    void timing(long nanos) {
+    }
+    
+    @Override
+    void success(String message) {
+        field(OK, message);
+    }
+    
+    @Override
+    void error(String message) {
+        field(ERROR, message);
+    }
+    
+    private void field(String key, Object value) {
+        out.println(key + " " + value);
+    }
+    
+    private static final class LinePrefixer extends OutputStream {
+        private static final byte[] PREFIX = (LINE + " ").getBytes(StandardCharsets.US_ASCII);
+        
+        private final OutputStream out;
+        private boolean lineStart = true;
+        
+        LinePrefixer(OutputStream out) {
+            this.out = out;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (lineStart) {
+                out.write(PREFIX);
+            }
+            out.write(b);
+            lineStart = b == '\n';
+        }
+        
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            int end = offset + length;
+            while (offset < end) {
+                if (lineStart) {
+                    out.write(PREFIX);
+                    lineStart = false;
+                }
+                int next = offset;
+                while (next < end && bytes[next] != '\n') {
+                    next++;
+                }
+                if (next < end) {
+                    next++;
+                    lineStart = true;
+                }
+                out.write(bytes, offset, next - offset);
+                offset = next;
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
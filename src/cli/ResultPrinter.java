@@ -0,0 +1,126 @@
+package cli;
+
+import query.FindRequest;
+import query.FindResult;
+import query.ScoredUser;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/** Formats command results; shared by the single-engine and the sharded executor so both print alike. */
+class ResultPrinter {
+    private final PrintStream out;
+    
+    ResultPrinter(PrintStream out) {
+        this.out = out;
+    }
+    
+    void find(CommandParser.CommandType type, String command, FindRequest request, FindResult result) {
+        int totalUsers = result.getUserCount();
+        
+        header(type + ": " + command);
+        
+        if (!request.isCountOnly()) {
+            userIds(result.getUserIds());
+        }
+        
+        out.println("├─ Results: " + result.getTotal() + " user(s) out of " + totalUsers);
+        if (request.isPaged() && !request.isCountOnly() && !result.getUserIds().isEmpty()) {
+            out.println("├─ Showing: " + (result.getFirstPosition() + 1) + "-"
+                + (result.getFirstPosition() + result.getUserIds().size()));
+        }
+        if (result.hasMore()) {
+            out.println("├─ Next page: " + type + " " + request.getQuery() + " LIMIT " + request.getLimit()
+                + " AFTER " + result.getNextCursor());
+        }
+        out.println("└─ Percentage: " + String.format("%.2f%%", share(result.getTotal(), totalUsers)));
+    }
+    
+    void search(String query, FindResult result) {
+        header("SEARCH: " + query);
+        userIds(result.getUserIds());
+        
+        out.println("├─ Results: " + result.getTotal() + " user(s) out of " + result.getUserCount());
+        out.println("└─ Percentage: " + String.format("%.2f%%", share(result.getTotal(), result.getUserCount())));
+    }
+    
+    private void userIds(List<String> userIds) {
+        if (userIds.isEmpty()) {
+            out.println("   (no users found)");
+        } else {
+            for (String userId : userIds) {
+                out.println("   • " + userId);
+            }
+        }
+        out.println();
+    }
+    
+    void addTag(String userId, String tag, boolean success) {
+        tagHeader("ADD_TAG", userId, tag);
+        if (success) {
+            success("Tag '" + tag + "' added to " + userId);
+        } else {
+            error("User " + userId + " not found");
+        }
+    }
+    
+    void removeTag(String userId, String tag, boolean success) {
+        tagHeader("REMOVE_TAG", userId, tag);
+        if (success) {
+            success("Tag '" + tag + "' removed from " + userId);
+        } else {
+            error("Tag '" + tag + "' not found on " + userId);
+        }
+    }
+    
+    void tagHeader(String command, String userId, String tag) {
+        out.println("┌─ " + command);
+        out.println("├─ User: " + userId);
+        out.println("├─ Tag: " + tag);
+        out.println("└─ ");
+    }
+    
+    void top(int k, String category, List<ScoredUser> users) {
+        header("TOP " + k + " " + category + " BY score");
+        
+        if (users.isEmpty()) {
+            out.println("   (no users found)");
+        }
+        for (int i = 0; i < users.size(); i++) {
+            out.println(String.format("   %3d. %-20s score %d", i + 1, users.get(i).getUserId(), users.get(i).getScore()));
+        }
+    }
+    
+    void statsByCategory(Map<String, Integer> counts, int uncategorized, int totalUsers) {
+        header("STATS BY category");
+        out.println(String.format("   %-30s %8s %8s", "Category / tag", "users", "share"));
+        counts.forEach((label, count) ->
+            out.println(String.format("   %-30s %8d %7.2f%%", label, count, share(count, totalUsers))));
+        out.println(String.format("   %-30s %8d %7.2f%%", "(no category)", uncategorized, share(uncategorized, totalUsers)));
+        out.println();
+        out.println("├─ Users: " + totalUsers);
+    }
+    
+    /** The title block every reply starts with. */
+    void header(String title) {
+        out.println("┌─ " + title);
+        out.println("└─ ");
+    }
+    
+    void timing(long nanos) {
+        out.println(String.format("⏱  Query executed in %.3f seconds", nanos / 1e9));
+    }
+    
+    static double share(long count, int totalUsers) {
+        return totalUsers > 0 ? count * 100.0 / totalUsers : 0.0;
+    }
+    
+    void success(String message) {
+        out.println("   ✓ " + message);
+    }
+    
+    void error(String message) {
+        out.println("   ✗ ERROR: " + message);
+    }
+}
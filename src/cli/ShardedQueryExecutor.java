@@ -0,0 +1,178 @@
+package cli;
+
+import config.Config;
+import query.FindRequest;
+import query.FindResult;
+import shard.ShardCoordinator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Executes commands through a {@link ShardCoordinator} and prints them as {@link QueryExecutor}
+ * does. Whole-population views that cannot be summed from the shards' replies (OVERLAP, HISTOGRAM)
+ * are refused; STATS, SAVE_SNAPSHOT and RELOAD_RULES show each shard's own reply.
+ */
+public class ShardedQueryExecutor {
+    private final ShardCoordinator coordinator;
+    private final PrintStream out;
+    private final ResultPrinter printer;
+    
+    public ShardedQueryExecutor(ShardCoordinator coordinator) {
+        this(coordinator, System.out);
+    }
+    
+    public ShardedQueryExecutor(ShardCoordinator coordinator, PrintStream out) {
+        this.coordinator = coordinator;
+        this.out = out;
+        this.printer = new ResultPrinter(out);
+    }
+    
+    public void execute(CommandParser.ParsedCommand command) {
+        if (command == null) {
+            return;
+        }
+        
+        long startTime = System.nanoTime();
+        String[] args = command.getArguments();
+        
+        try {
+            switch (command.getType()) {
+                case FIND:
+                case FILTER:
+                    handleFind(command.getType(), args[0]);
+                    break;
+                
+                case SEARCH:
+                    printer.search(args[0], coordinator.search(args[0]));
+                    break;
+                
+                case ADD_TAG:
+                    printer.addTag(args[1], args[0], coordinator.addTag(args[1], args[0]));
+                    break;
+                
+                case REMOVE_TAG:
+                    printer.removeTag(args[1], args[0], coordinator.removeTag(args[1], args[0]));
+                    break;
+                
+                case GET_USER_PROFILE:
+                    handleGetUserProfile(args[0]);
+                    break;
+                
+                case TOP:
+                    handleTop(args[0], args[1]);
+                    break;
+                
+                case STATS_BY_CATEGORY:
+                    ShardCoordinator.CategoryCounts counts = coordinator.countByCategory();
+                    printer.statsByCategory(counts.getCounts(), counts.getUncategorized(), counts.getUserCount());
+                    break;
+                
+                case STATS:
+                    handlePerShard("STATS", shard -> "STATS");
+                    break;
+                
+                case SAVE_SNAPSHOT:
+                    // One file per shard; --snapshot with the same name and shard count loads them back.
+                    handlePerShard("SAVE_SNAPSHOT: " + args[0], shard -> "SAVE_SNAPSHOT " + shardFile(args[0], shard));
+                    break;
+                
+                case RELOAD_RULES:
+                    handlePerShard("RELOAD_RULES" + (args.length > 0 ? ": " + args[0] : ""),
+                        shard -> "RELOAD_RULES" + (args.length > 0 ? " " + args[0] : ""));
+                    break;
+                
+                case OVERLAP:
+                case HISTOGRAM:
+                    printer.error(command.getType() + " is not available across shards; run it on a single engine");
+                    break;
+                
+                case INVALID:
+                    printer.error("Invalid command format");
+                    break;
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            printer.error(e.getMessage());
+        }
+        
+        if (Config.isShowExecutionTime()) {
+            out.println(String.format("⏱  Query executed in %.3f seconds", (System.nanoTime() - startTime) / 1e9));
+        }
+        out.println(QueryExecutor.SEPARATOR);
+    }
+    
+    /** The file shard {@code shard} keeps its part of the snapshot {@code file} in. */
+    public static String shardFile(String file, int shard) {
+        return file + ".shard-" + shard;
+    }
+    
+    private void handleFind(CommandParser.CommandType type, String command) throws IOException {
+        FindRequest request = FindRequest.parse(command);
+        FindResult result = coordinator.find(type.name(), request);
+        printer.find(type, command, request, result);
+    }
+    
+    private void handleGetUserProfile(String userId) throws IOException {
+        List<String> profile = coordinator.getUserProfile(userId);
+        out.println("┌─ GET_USER_PROFILE: " + userId);
+        out.println("└─ ");
+        if (profile == null) {
+            printer.error("User " + userId + " not found");
+            return;
+        }
+        // Raw UTF-8, as the engine writes profile text, whatever the console encoding.
+        for (String line : profile) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.println();
+    }
+    
+    private void handleTop(String count, String category) throws IOException {
+        int k;
+        try {
+            k = Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            printer.error("TOP needs a number of users, got '" + count + "'");
+            return;
+        }
+        if (k < 1) {
+            printer.error("TOP needs at least 1 user, got " + k);
+            return;
+        }
+        printer.top(k, category, coordinator.top(category, k));
+    }
+    
+    private void handlePerShard(String title, IntFunction<String> command) {
+        List<List<String>> replies = coordinator.broadcast(command);
+        out.println("┌─ " + title);
+        out.println("└─ ");
+        for (int shard = 0; shard < replies.size(); shard++) {
+            out.println("├─ Shard " + shard);
+            if (replies.get(shard) == null) {
+                printer.error("Shard " + shard + " did not answer");
+            } else {
+                replies.get(shard).forEach(this::printShardLine);
+            }
+        }
+    }
+    
+    /** A line of a shard's {@link ReplyPrinter} reply, with its messages printed as ours are. */
+    private void printShardLine(String line) {
+        String error = ReplyPrinter.valueOf(line, ReplyPrinter.ERROR);
+        String success = ReplyPrinter.valueOf(line, ReplyPrinter.OK);
+        String text = ReplyPrinter.valueOf(line, ReplyPrinter.LINE);
+        if (error != null) {
+            printer.error(error);
+        } else if (success != null) {
+            printer.success(success);
+        } else if (text != null) {
+            out.println(text);
+        } else {
+            out.println(line);
+        }
+    }
+}
@@ -1,7 +1,26 @@
 package config;
 
+import store.TagLog;
+
 public class Config {
     private static boolean showExecutionTime = true;
+    private static int loaderThreads = Runtime.getRuntime().availableProcessors();
+    private static int readerThreads = 2;
+    private static int loaderQueueCapacity = 256;
+    private static boolean lazyContent = false;
+    private static int contentCacheSize = 64;
+    private static long resultCacheBytes = 32L * 1024 * 1024;
+    private static int serverMaxConnections = 10_000;
+    private static int serverMaxConcurrentCommands = Runtime.getRuntime().availableProcessors() * 4;
+    private static TagLog.SyncPolicy tagLogSyncPolicy = TagLog.SyncPolicy.GROUP;
+    private static long tagLogGroupCommitMillis = 1;
+    private static int tagLogCheckpointThreshold = 50_000;
+    private static long watchDebounceMillis = 250;
+    private static long watchMaxDelayMillis = 5000;
+    private static String rulesFile = null;
+    private static int shardIndex = 0;
+    private static int shardCount = 1;
+    private static long shardTimeoutMillis = 5000;
     
     public static boolean isShowExecutionTime() {
         return showExecutionTime;
@@ -14,4 +33,145 @@ public class Config {
     public static void toggleExecutionTime() {
         showExecutionTime = !showExecutionTime;
     }
+    
+    public static int getLoaderThreads() {
+        return loaderThreads;
+    }
+    
+    public static void setLoaderThreads(int threads) {
+        loaderThreads = Math.max(1, threads);
+    }
+    
+    public static int getReaderThreads() {
+        return readerThreads;
+    }
+    
+    public static void setReaderThreads(int threads) {
+        readerThreads = Math.max(1, threads);
+    }
+    
+    public static int getLoaderQueueCapacity() {
+        return loaderQueueCapacity;
+    }
+    
+    public static void setLoaderQueueCapacity(int capacity) {
+        loaderQueueCapacity = Math.max(1, capacity);
+    }
+    
+    public static boolean isLazyContent() {
+        return lazyContent;
+    }
+    
+    public static void setLazyContent(boolean lazy) {
+        lazyContent = lazy;
+    }
+    
+    public static int getContentCacheSize() {
+        return contentCacheSize;
+    }
+    
+    public static void setContentCacheSize(int size) {
+        contentCacheSize = Math.max(0, size);
+    }
+    
+    public static long getResultCacheBytes() {
+        return resultCacheBytes;
+    }
+    
+    /** Memory budget for cached FIND/FILTER/SEARCH results; 0 turns the cache off. */
+    public static void setResultCacheBytes(long bytes) {
+        resultCacheBytes = Math.max(0, bytes);
+    }
+    
+    public static int getServerMaxConnections() {
+        return serverMaxConnections;
+    }
+    
+    public static void setServerMaxConnections(int connections) {
+        serverMaxConnections = Math.max(1, connections);
+    }
+    
+    public static int getServerMaxConcurrentCommands() {
+        return serverMaxConcurrentCommands;
+    }
+    
+    public static void setServerMaxConcurrentCommands(int commands) {
+        serverMaxConcurrentCommands = Math.max(1, commands);
+    }
+    
+    public static TagLog.SyncPolicy getTagLogSyncPolicy() {
+        return tagLogSyncPolicy;
+    }
+    
+    public static void setTagLogSyncPolicy(TagLog.SyncPolicy policy) {
+        tagLogSyncPolicy = policy;
+    }
+    
+    public static long getTagLogGroupCommitMillis() {
+        return tagLogGroupCommitMillis;
+    }
+    
+    public static void setTagLogGroupCommitMillis(long millis) {
+        tagLogGroupCommitMillis = Math.max(0, millis);
+    }
+    
+    public static int getTagLogCheckpointThreshold() {
+        return tagLogCheckpointThreshold;
+    }
+    
+    public static void setTagLogCheckpointThreshold(int records) {
+        tagLogCheckpointThreshold = Math.max(1, records);
+    }
+    
+    public static long getWatchDebounceMillis() {
+        return watchDebounceMillis;
+    }
+    
+    public static void setWatchDebounceMillis(long millis) {
+        watchDebounceMillis = Math.max(0, millis);
+    }
+    
+    public static long getWatchMaxDelayMillis() {
+        return watchMaxDelayMillis;
+    }
+    
+    /** The longest the watcher holds back changes waiting for the directory to go quiet. */
+    public static void setWatchMaxDelayMillis(long millis) {
+        watchMaxDelayMillis = Math.max(0, millis);
+    }
+    
+    /** The rules file given with {@code --rules}, or null for the default rules on the class path. */
+    public static String getRulesFile() {
+        return rulesFile;
+    }
+    
+    public static void setRulesFile(String file) {
+        rulesFile = file;
+    }
+    
+    public static int getShardIndex() {
+        return shardIndex;
+    }
+    
+    public static int getShardCount() {
+        return shardCount;
+    }
+    
+    /** Makes this process load only the users of shard {@code index} out of {@code count}. */
+    public static void setShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        }
+        shardIndex = index;
+        shardCount = count;
+    }
+    
+    public static long getShardTimeoutMillis() {
+        return shardTimeoutMillis;
+    }
+    
+    /** How long the coordinator waits for each shard's reply before answering without it. */
+    public static void setShardTimeoutMillis(long millis) {
+        shardTimeoutMillis = Math.max(1, millis);
+    }
 }
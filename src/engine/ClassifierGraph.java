@@ -0,0 +1,109 @@
+package engine;
+
+import classifier.Classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders classifiers by the categories they read. Classifiers on the same level only depend on
+ * earlier levels, so they can be evaluated in any order or concurrently.
+ */
+public class ClassifierGraph {
+    private final List<Classifier> classifiers;
+    private final List<List<Classifier>> levels;
+    
+    public ClassifierGraph(List<Classifier> classifiers) {
+        this.classifiers = List.copyOf(classifiers);
+        
+        Map<String, Classifier> byCategory = new HashMap<>();
+        for (Classifier classifier : classifiers) {
+            Classifier previous = byCategory.put(classifier.getCategoryName(), classifier);
+            if (previous != null) {
+                throw new IllegalStateException("Two classifiers produce category '"
+                    + classifier.getCategoryName() + "'");
+            }
+        }
+        for (Classifier classifier : classifiers) {
+            for (String dependency : classifier.getDependencies()) {
+                if (!byCategory.containsKey(dependency)) {
+                    throw new IllegalStateException("Classifier '" + classifier.getCategoryName()
+                        + "' depends on unknown category '" + dependency + "'");
+                }
+            }
+        }
+        
+        Map<Classifier, Integer> levelOf = new LinkedHashMap<>();
+        for (Classifier classifier : classifiers) {
+            level(classifier, byCategory, levelOf, new ArrayList<>());
+        }
+        
+        List<List<Classifier>> levels = new ArrayList<>();
+        for (Classifier classifier : classifiers) {
+            int level = levelOf.get(classifier);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(classifier);
+        }
+        List<List<Classifier>> frozen = new ArrayList<>();
+        for (List<Classifier> level : levels) {
+            frozen.add(Collections.unmodifiableList(level));
+        }
+        this.levels = Collections.unmodifiableList(frozen);
+    }
+    
+    private static int level(Classifier classifier, Map<String, Classifier> byCategory,
+                             Map<Classifier, Integer> levelOf, List<Classifier> path) {
+        Integer known = levelOf.get(classifier);
+        if (known != null) {
+            return known;
+        }
+        if (path.contains(classifier)) {
+            StringBuilder cycle = new StringBuilder();
+            for (Classifier step : path.subList(path.indexOf(classifier), path.size())) {
+                cycle.append(step.getCategoryName()).append(" -> ");
+            }
+            throw new IllegalStateException("Classifier dependency cycle: " + cycle + classifier.getCategoryName());
+        }
+        
+        path.add(classifier);
+        int level = 0;
+        for (String dependency : classifier.getDependencies()) {
+            level = Math.max(level, level(byCategory.get(dependency), byCategory, levelOf, path) + 1);
+        }
+        path.remove(path.size() - 1);
+        levelOf.put(classifier, level);
+        return level;
+    }
+    
+    /** The given categories plus every category whose classifier reads one of them, directly or not. */
+    public Set<String> withDependents(Set<String> categories) {
+        Set<String> affected = new LinkedHashSet<>(categories);
+        for (List<Classifier> level : levels) {
+            for (Classifier classifier : level) {
+                for (String dependency : classifier.getDependencies()) {
+                    if (affected.contains(dependency)) {
+                        affected.add(classifier.getCategoryName());
+                        break;
+                    }
+                }
+            }
+        }
+        return affected;
+    }
+    
+    public List<Classifier> getClassifiers() {
+        return classifiers;
+    }
+    
+    public List<List<Classifier>> getLevels() {
+        return levels;
+    }
+}
@@ -0,0 +1,478 @@
+package engine;
+
+import model.ContentSource;
+import shard.Partition;
+import store.ContentStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Many profiles packed into one file, read front to back with large buffered reads instead of one
+ * open/read/close per user. The format follows the file extension:
+ * <ul>
+ *   <li>{@code .tar} - a POSIX/GNU tar archive of {@code user_N.md} files</li>
+ *   <li>{@code .zip} - a ZIP archive of {@code user_N.md} files</li>
+ *   <li>{@code .jsonl} - one {@code {"name": "user_N.md", "content": "..."}} object per line</li>
+ *   <li>{@code .bundle} - records of a 2-byte name length, the UTF-8 name, a 4-byte content
+ *   length and the UTF-8 content, all big-endian</li>
+ * </ul>
+ * Entries whose name does not end in {@code .md} are skipped, as in a profile directory. TAR and
+ * {@code .bundle} files keep each profile's bytes verbatim, so their entries point into the file
+ * and can be dropped from memory and re-read; ZIP and JSONL text stays in memory.
+ */
+public abstract class ProfileBundle implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    protected final Path file;
+    protected final ContentStore contentStore;
+    
+    private ProfileBundle(Path file, ContentStore contentStore) {
+        this.file = file;
+        this.contentStore = contentStore;
+    }
+    
+    public static ProfileBundle open(Path file, ContentStore contentStore) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".tar")) {
+            return new TarBundle(file, contentStore);
+        }
+        if (name.endsWith(".zip")) {
+            return new ZipBundle(file, contentStore);
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return new JsonLinesBundle(file, contentStore);
+        }
+        if (name.endsWith(".bundle")) {
+            return new LengthPrefixedBundle(file, contentStore);
+        }
+        throw new IOException("Unknown bundle format: " + file.getFileName() + " (expected .tar, .zip, .jsonl or .bundle)");
+    }
+    
+    public Path getFile() {
+        return file;
+    }
+    
+    /** The next profile entry, or null once the bundle is exhausted. */
+    public abstract Entry next() throws IOException;
+    
+    /** Profile entries of this process's shard; see {@link Partition#owns(String)}. */
+    private static boolean isProfile(String name) {
+        return name.endsWith(".md") && Partition.owns(name);
+    }
+    
+    private static DataInputStream openStream(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+    
+    public static final class Entry {
+        private final String name;
+        private final String content;
+        private final ContentSource source;
+        
+        Entry(String name, String content, ContentSource source) {
+            this.name = name;
+            this.content = content;
+            this.source = source;
+        }
+        
+        /** The entry's file name, which the user id is parsed from. */
+        public String getName() {
+            return name;
+        }
+        
+        public String getContent() {
+            return content;
+        }
+        
+        public ContentSource getSource() {
+            return source;
+        }
+    }
+    
+    private static final class TarBundle extends ProfileBundle {
+        private static final int BLOCK_SIZE = 512;
+        
+        private final DataInputStream in;
+        private final byte[] header = new byte[BLOCK_SIZE];
+        private long position;
+        private String longName;
+        
+        TarBundle(Path file, ContentStore contentStore) throws IOException {
+            super(file, contentStore);
+            this.in = openStream(file);
+        }
+        
+        @Override
+        public Entry next() throws IOException {
+            while (true) {
+                if (!readHeader()) {
+                    return null;
+                }
+                String name = longName != null ? longName : headerName();
+                longName = null;
+                long size = parseSize();
+                char type = (char) header[156];
+                long dataOffset = position;
+                
+                try {
+                    if (type == 'L' || type == 'x') {
+                        String text = new String(readData(size), StandardCharsets.UTF_8);
+                        longName = type == 'L' ? trimNul(text) : paxPath(text);
+                    } else if ((type == '0' || type == '\0') && isProfile(name)) {
+                        if (size > Integer.MAX_VALUE) {
+                            throw new IOException("Entry too large in " + file.getFileName() + ": " + name);
+                        }
+                        String content = new String(readData(size), StandardCharsets.UTF_8);
+                        return new Entry(name, content, contentStore.locate(file, dataOffset, (int) size));
+                    } else {
+                        skip(padded(size));
+                    }
+                } catch (EOFException e) {
+                    throw new EOFException("Truncated tar entry " + name + " in " + file.getFileName());
+                }
+            }
+        }
+        
+        private boolean readHeader() throws IOException {
+            int read = in.readNBytes(header, 0, BLOCK_SIZE);
+            if (read == 0) {
+                return false;
+            }
+            if (read < BLOCK_SIZE) {
+                throw new EOFException("Truncated tar header in " + file.getFileName());
+            }
+            position += BLOCK_SIZE;
+            for (byte b : header) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private String headerName() {
+            String name = field(0, 100);
+            boolean ustar = header[257] == 'u' && header[258] == 's' && header[259] == 't'
+                && header[260] == 'a' && header[261] == 'r';
+            String prefix = ustar ? field(345, 155) : "";
+            return prefix.isEmpty() ? name : prefix + "/" + name;
+        }
+        
+        private String field(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+        
+        /** Octal, or big-endian binary when the first byte has its high bit set (GNU, for 8 GB and up). */
+        private long parseSize() throws IOException {
+            if ((header[124] & 0x80) != 0) {
+                long size = 0;
+                for (int i = 125; i < 136; i++) {
+                    size = size << 8 | (header[i] & 0xFF);
+                }
+                return size;
+            }
+            String octal = field(124, 12).trim();
+            try {
+                return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt tar header in " + file.getFileName() + ": size '" + octal + "'");
+            }
+        }
+        
+        private byte[] readData(long size) throws IOException {
+            byte[] data = new byte[(int) size];
+            in.readFully(data);
+            position += size;
+            skip(padded(size) - size);
+            return data;
+        }
+        
+        private void skip(long count) throws IOException {
+            in.skipNBytes(count);
+            position += count;
+        }
+        
+        private static long padded(long size) {
+            return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        }
+        
+        private static String trimNul(String text) {
+            int end = text.indexOf('\0');
+            return end >= 0 ? text.substring(0, end) : text;
+        }
+        
+        /** The {@code path} record of a pax extended header ({@code "<length> path=<value>\n"}), if any. */
+        private static String paxPath(String records) {
+            for (String record : records.split("\n")) {
+                int key = record.indexOf(' ');
+                if (key > 0 && record.startsWith("path=", key + 1)) {
+                    return record.substring(key + 6);
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    private static final class ZipBundle extends ProfileBundle {
+        private final ZipInputStream in;
+        
+        ZipBundle(Path file, ContentStore contentStore) throws IOException {
+            super(file, contentStore);
+            this.in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+        }
+        
+        @Override
+        public Entry next() throws IOException {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!entry.isDirectory() && isProfile(entry.getName())) {
+                    String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    return new Entry(entry.getName(), content, contentStore.hold(file, content));
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    private static final class LengthPrefixedBundle extends ProfileBundle {
+        private final DataInputStream in;
+        private long position;
+        
+        LengthPrefixedBundle(Path file, ContentStore contentStore) throws IOException {
+            super(file, contentStore);
+            this.in = openStream(file);
+        }
+        
+        @Override
+        public Entry next() throws IOException {
+            while (true) {
+                int high = in.read();
+                if (high < 0) {
+                    return null;
+                }
+                try {
+                    byte[] name = new byte[high << 8 | in.readUnsignedByte()];
+                    in.readFully(name);
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Corrupt record in " + file.getFileName() + " at byte " + position);
+                    }
+                    long offset = position + 2 + name.length + 4;
+                    byte[] content = new byte[length];
+                    in.readFully(content);
+                    position = offset + length;
+                    
+                    String entryName = new String(name, StandardCharsets.UTF_8);
+                    if (isProfile(entryName)) {
+                        return new Entry(entryName, new String(content, StandardCharsets.UTF_8),
+                            contentStore.locate(file, offset, length));
+                    }
+                } catch (EOFException e) {
+                    throw new EOFException("Truncated record in " + file.getFileName() + " at byte " + position);
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    private static final class JsonLinesBundle extends ProfileBundle {
+        private final BufferedReader in;
+        private int lineNumber;
+        
+        JsonLinesBundle(Path file, ContentStore contentStore) throws IOException {
+            super(file, contentStore);
+            this.in = new BufferedReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        }
+        
+        @Override
+        public Entry next() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonRecord record = new JsonRecord(line);
+                    record.parse();
+                    if (record.name == null || record.content == null) {
+                        throw new IllegalArgumentException("needs both \"name\" and \"content\"");
+                    }
+                    if (isProfile(record.name)) {
+                        return new Entry(record.name, record.content, contentStore.hold(file, record.content));
+                    }
+                } catch (IllegalArgumentException e) {
+                    // A bad line is skipped like an unparsable profile file; the lines after it are independent.
+                    System.err.println("   ⚠ Warning: Error parsing " + file.getFileName() + " line " + lineNumber
+                        + ": " + e.getMessage());
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+    
+    /** One flat JSON object; string members are kept by key, other scalar members are skipped. */
+    private static final class JsonRecord {
+        private final String text;
+        private int position;
+        private String name;
+        private String content;
+        
+        JsonRecord(String text) {
+            this.text = text;
+        }
+        
+        void parse() {
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    String key = readString();
+                    expect(':');
+                    if (peek() == '"') {
+                        String value = readString();
+                        if (key.equals("name")) {
+                            name = value;
+                        } else if (key.equals("content")) {
+                            content = value;
+                        }
+                    } else {
+                        skipScalar();
+                    }
+                } while (accept(','));
+                expect('}');
+            }
+            if (peek() != 0) {
+                throw new IllegalArgumentException("unexpected text after the object");
+            }
+        }
+        
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("unterminated string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("truncated \\u escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("bad \\u escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad escape \\" + escaped);
+                }
+            }
+        }
+        
+        private void skipScalar() {
+            int start = position;
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0) {
+                char c = text.charAt(position);
+                if (c == '{' || c == '[') {
+                    throw new IllegalArgumentException("nested objects and arrays are not supported");
+                }
+                position++;
+            }
+            if (position == start) {
+                throw new IllegalArgumentException("missing value");
+            }
+        }
+        
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+        
+        private boolean accept(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(char c) {
+            if (!accept(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at column " + (position + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package engine;
+
+import model.ContentSource;
+import model.UserProfile;
+import store.ContentStore;
+import store.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ProfileLoader {
+    private static final Path END_OF_PATHS = Path.of("");
+    private static final RawProfile END_OF_RAW = new RawProfile(null, null, null);
+    private static final UserProfile END_OF_PROFILES = new UserProfile("user_0", null, null, null);
+    
+    private final ProfileProcessor processor;
+    private final DataStore dataStore;
+    private final ContentStore contentStore;
+    private final int readerThreads;
+    private final int workerThreads;
+    private final int queueCapacity;
+    
+    public ProfileLoader(ProfileProcessor processor, DataStore dataStore, ContentStore contentStore,
+                         int readerThreads, int workerThreads, int queueCapacity) {
+        this.processor = processor;
+        this.dataStore = dataStore;
+        this.contentStore = contentStore;
+        this.readerThreads = readerThreads;
+        this.workerThreads = workerThreads;
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public LoadStats load(Iterable<Path> files) throws IOException {
+        BlockingQueue<Path> pathQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<RawProfile> rawQueue = new ArrayBlockingQueue<>(queueCapacity);
+        
+        LoadStats stats = new LoadStats(readerThreads, workerThreads);
+        AtomicInteger activeReaders = new AtomicInteger(readerThreads);
+        Pipeline pipeline = new Pipeline();
+        
+        for (int i = 0; i < readerThreads; i++) {
+            pipeline.start("profile-reader-" + i, () -> {
+                try {
+                    read(pathQueue, rawQueue, stats.read);
+                } finally {
+                    if (activeReaders.decrementAndGet() == 0) {
+                        for (int w = 0; w < workerThreads; w++) {
+                            putEnd(rawQueue, END_OF_RAW);
+                        }
+                    }
+                }
+            });
+        }
+        
+        startWorkers(pipeline, rawQueue, stats);
+        
+        long startTime = System.nanoTime();
+        try {
+            for (Path file : files) {
+                pathQueue.put(file);
+            }
+            for (int i = 0; i < readerThreads; i++) {
+                pathQueue.put(END_OF_PATHS);
+            }
+        } catch (InterruptedException e) {
+            pipeline.interrupted();
+        } catch (RuntimeException e) {
+            pipeline.fail(e);
+        }
+        pipeline.join();
+        stats.wallNanos = System.nanoTime() - startTime;
+        
+        return stats;
+    }
+    
+    /**
+     * Loads a bundle through the same workers and writer. The bundle is one sequential stream, so
+     * the calling thread is its only reader. A corrupt record ends the load with its IOException once
+     * the profiles read before it have been written.
+     */
+    public LoadStats load(ProfileBundle bundle) throws IOException {
+        BlockingQueue<RawProfile> rawQueue = new ArrayBlockingQueue<>(queueCapacity);
+        LoadStats stats = new LoadStats(1, workerThreads);
+        Pipeline pipeline = new Pipeline();
+        startWorkers(pipeline, rawQueue, stats);
+        
+        long startTime = System.nanoTime();
+        IOException corrupt = null;
+        try {
+            try {
+                long start = System.nanoTime();
+                ProfileBundle.Entry entry;
+                while ((entry = bundle.next()) != null) {
+                    stats.read.record(System.nanoTime() - start);
+                    rawQueue.put(new RawProfile(entry.getName(), entry.getContent(), entry.getSource()));
+                    start = System.nanoTime();
+                }
+            } catch (IOException e) {
+                corrupt = e;
+            }
+            for (int w = 0; w < workerThreads; w++) {
+                rawQueue.put(END_OF_RAW);
+            }
+        } catch (InterruptedException e) {
+            pipeline.interrupted();
+        } catch (RuntimeException e) {
+            pipeline.fail(e);
+        }
+        pipeline.join();
+        stats.wallNanos = System.nanoTime() - startTime;
+        
+        if (corrupt != null) {
+            throw corrupt;
+        }
+        return stats;
+    }
+    
+    private void startWorkers(Pipeline pipeline, BlockingQueue<RawProfile> rawQueue, LoadStats stats) {
+        BlockingQueue<UserProfile> profileQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger activeWorkers = new AtomicInteger(workerThreads);
+        for (int i = 0; i < workerThreads; i++) {
+            pipeline.start("profile-classifier-" + i, () -> {
+                try {
+                    parseAndClassify(rawQueue, profileQueue, stats.classify);
+                } finally {
+                    if (activeWorkers.decrementAndGet() == 0) {
+                        putEnd(profileQueue, END_OF_PROFILES);
+                    }
+                }
+            });
+        }
+        
+        pipeline.start("profile-writer", () -> write(profileQueue, stats.index));
+    }
+    
+    private void read(BlockingQueue<Path> pathQueue, BlockingQueue<RawProfile> rawQueue, StageStats stage) {
+        try {
+            Path filePath;
+            while ((filePath = pathQueue.take()) != END_OF_PATHS) {
+                long start = System.nanoTime();
+                RawProfile raw = null;
+                try {
+                    String content = Files.readString(filePath);
+                    raw = new RawProfile(filePath.getFileName().toString(), content,
+                        contentStore.locate(filePath, content));
+                } catch (Exception e) {
+                    warn(filePath.getFileName().toString(), e);
+                }
+                stage.record(System.nanoTime() - start);
+                if (raw != null) {
+                    rawQueue.put(raw);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void parseAndClassify(BlockingQueue<RawProfile> rawQueue, BlockingQueue<UserProfile> profileQueue,
+                                  StageStats stage) {
+        try {
+            RawProfile raw;
+            while ((raw = rawQueue.take()) != END_OF_RAW) {
+                long start = System.nanoTime();
+                UserProfile profile = null;
+                try {
+                    profile = processor.process(raw.name, raw.content, raw.source);
+                } catch (Exception e) {
+                    warn(raw.name, e);
+                }
+                stage.record(System.nanoTime() - start);
+                if (profile != null) {
+                    profileQueue.put(profile);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void write(BlockingQueue<UserProfile> profileQueue, StageStats stage) {
+        try {
+            UserProfile profile;
+            while ((profile = profileQueue.take()) != END_OF_PROFILES) {
+                long start = System.nanoTime();
+                dataStore.addUser(profile);
+                stage.record(System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /** Queues an end marker; an interrupt means the pipeline failed and nobody will take it. */
+    private static <T> void putEnd(BlockingQueue<T> queue, T end) {
+        try {
+            queue.put(end);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static void warn(String name, Exception e) {
+        System.err.println("   ⚠ Warning: Error parsing " + name + ": " + e.getMessage());
+    }
+    
+    public interface ProfileProcessor {
+        /** Builds a profile from a file or bundle entry; the user id is parsed from {@code name}. */
+        UserProfile process(String name, String content, ContentSource source) throws IOException;
+    }
+    
+    /**
+     * The stage threads of one load. Stages only stop on end markers, so a stage that throws would
+     * leave the ones before it blocked on a full queue: the first failure interrupts every stage and
+     * the calling thread instead, and {@link #join()} rethrows it once all of them have stopped.
+     */
+    private static class Pipeline {
+        private final Thread caller = Thread.currentThread();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean callerInterrupted;
+        
+        void start(String name, Runnable task) {
+            Thread thread = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    fail(e);
+                }
+            }, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+            if (failure.get() != null) {
+                thread.interrupt();
+            }
+        }
+        
+        void fail(Throwable e) {
+            if (failure.compareAndSet(null, e)) {
+                threads.forEach(Thread::interrupt);
+                caller.interrupt();
+            }
+        }
+        
+        /** Called when the calling thread was interrupted while feeding the pipeline. */
+        void interrupted() {
+            if (failure.get() == null) {
+                callerInterrupted = true;
+                fail(new IOException("Interrupted while loading profiles"));
+            }
+        }
+        
+        void join() throws IOException {
+            for (Thread thread : threads) {
+                while (true) {
+                    try {
+                        thread.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted();
+                    }
+                }
+            }
+            // Drop the interrupt fail() sent us; keep one that came from outside.
+            Thread.interrupted();
+            if (callerInterrupted) {
+                caller.interrupt();
+            }
+            
+            Throwable e = failure.get();
+            if (e instanceof IOException io) {
+                throw io;
+            } else if (e instanceof RuntimeException runtime) {
+                throw runtime;
+            } else if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+    
+    private static class RawProfile {
+        private final String name;
+        private final String content;
+        private final ContentSource source;
+        
+        RawProfile(String name, String content, ContentSource source) {
+            this.name = name;
+            this.content = content;
+            this.source = source;
+        }
+    }
+    
+    public static class StageStats {
+        private final String name;
+        private final int threads;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong();
+        
+        StageStats(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+        }
+        
+        void record(long nanos) {
+            count.incrementAndGet();
+            busyNanos.addAndGet(nanos);
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getThreads() {
+            return threads;
+        }
+        
+        public int getCount() {
+            return count.get();
+        }
+        
+        public long getBusyNanos() {
+            return busyNanos.get();
+        }
+        
+        public double getThroughput() {
+            long nanos = busyNanos.get();
+            return nanos > 0 ? count.get() * threads * 1e9 / nanos : 0.0;
+        }
+    }
+    
+    public static class LoadStats {
+        private final StageStats read;
+        private final StageStats classify;
+        private final StageStats index;
+        private long wallNanos;
+        
+        LoadStats(int readerThreads, int workerThreads) {
+            this.read = new StageStats("read", readerThreads);
+            this.classify = new StageStats("parse+classify", workerThreads);
+            this.index = new StageStats("index", 1);
+        }
+        
+        public List<StageStats> getStages() {
+            return List.of(read, classify, index);
+        }
+        
+        public int getLoadedCount() {
+            return index.getCount();
+        }
+        
+        public long getWallNanos() {
+            return wallNanos;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package engine;
+
+import shard.Partition;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class ProfileWatcher implements AutoCloseable {
+    private final QueryEngine engine;
+    private final Path directory;
+    private final long debounceMillis;
+    private final long maxDelayMillis;
+    private final WatchService watchService;
+    private final Thread thread;
+    
+    public ProfileWatcher(QueryEngine engine, String dataDirectory, long debounceMillis, long maxDelayMillis)
+            throws IOException {
+        this.engine = engine;
+        this.directory = Paths.get(dataDirectory);
+        this.debounceMillis = debounceMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::watch, "profile-watcher");
+        thread.setDaemon(true);
+    }
+    
+    public void start() {
+        thread.start();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+    
+    private void watch() {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), changed);
+                
+                // An editor or copy usually fires several events per file; wait until the directory is quiet,
+                // but not past the cap, so a directory that keeps changing is still applied batch by batch.
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (true) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    WatchKey key = remaining > 0
+                        ? watchService.poll(Math.min(debounceMillis, remaining), TimeUnit.MILLISECONDS)
+                        : null;
+                    if (key == null) {
+                        break;
+                    }
+                    overflow |= collect(key, changed);
+                }
+                
+                try {
+                    if (overflow) {
+                        int applied = engine.rescanProfiles(directory.toString());
+                        System.out.println("↻ Rescanned " + applied + " profile file(s) after missed events");
+                    } else if (!changed.isEmpty()) {
+                        int applied = engine.applyFileChanges(changed);
+                        System.out.println("↻ Applied " + applied + " changed profile file(s)");
+                    }
+                } catch (RuntimeException e) {
+                    // One bad batch must not stop the watcher; the next change to those files retries them.
+                    System.err.println("   ⚠ Warning: Could not apply profile changes: " + e);
+                }
+                System.out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Stopped.
+        } catch (IOException e) {
+            System.err.println("   ⚠ Warning: Profile watcher stopped: " + e.getMessage());
+        }
+    }
+    
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            String name = file.getFileName().toString();
+            if (name.endsWith(".md") && Partition.owns(name)) {
+                changed.add(file);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+}
@@ -1,68 +1,621 @@
 package engine;
 
 import classifier.*;
+import config.Config;
+import metrics.EngineMetrics;
+import metrics.EngineStats;
+import model.ContentSource;
+import model.UserIds;
 import model.UserProfile;
 import parser.ProfileParser;
+import parser.Tokenizer;
+import query.Aggregator;
+import query.FindExpression;
+import query.FindRequest;
+import query.FindResult;
+import query.MetricFilter;
+import query.QueryPlanner;
+import query.ScoredUser;
+import query.SearchQuery;
+import shard.Partition;
+import store.ContentStore;
 import store.DataStore;
+import store.RoaringBitmap;
+import store.ScoreColumn;
+import store.SnapshotFile;
+import store.TagLog;
+import store.UserIdOrder;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 public class QueryEngine {
+    private static final int CLASSIFY_BATCH_SIZE = 256;
+    
     private final DataStore dataStore;
+    private final ContentStore contentStore;
     private final ProfileParser parser;
-    private final List<Classifier> classifiers;
+    private final Object tagMutationLock = new Object();
+    private final Object classificationLock = new Object();
+    private final EngineMetrics metrics;
+    private final EngineStats stats;
+    private final ResultCache resultCache;
+    private volatile RuleFile rules;
+    private volatile Classification classification;
+    private ProfileLoader.LoadStats lastLoadStats;
+    private TagLog tagLog;
     
-    public QueryEngine() {
+    public QueryEngine() throws IOException {
         this.dataStore = new DataStore();
+        this.contentStore = new ContentStore(Config.getContentCacheSize());
         this.parser = new ProfileParser();
-        this.classifiers = new ArrayList<>();
-        initializeClassifiers();
-    }
-    
-    private void initializeClassifiers() {
-        classifiers.add(new FraudClassifier());
-        classifiers.add(new BusinessClassifier());
-        classifiers.add(new NewUserClassifier());
-        classifiers.add(new RealEstateClassifier());
+        this.metrics = new EngineMetrics();
+        this.rules = Config.getRulesFile() != null
+            ? RuleFile.load(Paths.get(Config.getRulesFile()))
+            : RuleFile.loadDefault();
+        this.classification = new Classification(new ClassifierGraph(rules.getClassifiers()), metrics);
+        this.stats = new EngineStats(metrics, dataStore::snapshot);
+        this.resultCache = new ResultCache(Config.getResultCacheBytes(), metrics.getResultCache());
     }
     
+    /** Loads a directory of {@code user_N.md} files, or a single bundle file (see {@link ProfileBundle}). */
     public int loadProfiles(String dataDirectory) throws IOException {
         Path dirPath = Paths.get(dataDirectory);
+        if (Files.isRegularFile(dirPath)) {
+            return loadBundle(dirPath);
+        }
         
         if (!Files.exists(dirPath) || !Files.isDirectory(dirPath)) {
             throw new IOException("Invalid data directory: " + dataDirectory);
         }
         
-        int loadedCount = 0;
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, "*.md")) {
-            for (Path filePath : stream) {
+        long startTime = System.nanoTime();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, QueryEngine::isProfileFile)) {
+            if (Config.getLoaderThreads() > 1) {
+                lastLoadStats = newLoader().load(stream);
+            } else {
+                lastLoadStats = loadSequentially(stream);
+            }
+        }
+        return finishLoad(startTime);
+    }
+    
+    /** Streams every profile of a TAR, ZIP, JSONL or length-prefixed bundle through the load pipeline. */
+    public int loadBundle(Path bundleFile) throws IOException {
+        long startTime = System.nanoTime();
+        try (ProfileBundle bundle = ProfileBundle.open(bundleFile, contentStore)) {
+            if (Config.getLoaderThreads() > 1) {
+                lastLoadStats = newLoader().load(bundle);
+            } else {
+                lastLoadStats = loadSequentially(bundle);
+            }
+        }
+        return finishLoad(startTime);
+    }
+    
+    /** Profile files of this process's shard; see {@link Partition#owns(String)}. */
+    private static boolean isProfileFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".md") && Partition.owns(name);
+    }
+    
+    private ProfileLoader newLoader() {
+        return new ProfileLoader(this::prepareProfile, dataStore, contentStore,
+            Config.getReaderThreads(), Config.getLoaderThreads(), Config.getLoaderQueueCapacity());
+    }
+    
+    private int finishLoad(long startTime) {
+        dataStore.commit();
+        int loadedCount = lastLoadStats.getLoadedCount();
+        for (ProfileLoader.StageStats stage : lastLoadStats.getStages()) {
+            metrics.recordLoadPhase(stage.getName(), stage.getCount(), stage.getBusyNanos());
+        }
+        metrics.recordLoadPhase("total", loadedCount, System.nanoTime() - startTime);
+        return loadedCount;
+    }
+    
+    public int applyFileChanges(Collection<Path> files) {
+        synchronized (classificationLock) {
+            long startTime = System.nanoTime();
+            List<UserProfile> upserts = new ArrayList<>();
+            List<String> removals = new ArrayList<>();
+            for (Path filePath : files) {
                 try {
-                    UserProfile profile = parser.parse(filePath);
-                    classifyUser(profile);
-                    dataStore.addUser(profile);
-                    loadedCount++;
+                    if (Files.exists(filePath)) {
+                        String content = Files.readString(filePath);
+                        upserts.add(parseProfile(parser.parseUserId(filePath), content,
+                            contentStore.locate(filePath, content)));
+                    } else {
+                        removals.add(parser.parseUserId(filePath));
+                    }
                 } catch (Exception e) {
                     System.err.println("   ⚠ Warning: Error parsing " + filePath.getFileName() + ": " + e.getMessage());
                 }
             }
+            classifyUsers(upserts);
+            for (UserProfile profile : upserts) {
+                releaseContent(profile);
+            }
+            dataStore.update(upserts, removals);
+            metrics.recordLoadPhase("reload", upserts.size() + removals.size(), System.nanoTime() - startTime);
+            return upserts.size() + removals.size();
+        }
+    }
+    
+    public int rescanProfiles(String dataDirectory) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        Path dirPath = Paths.get(dataDirectory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, QueryEngine::isProfileFile)) {
+            stream.forEach(files::add);
+        }
+        for (UserProfile profile : dataStore.snapshot().getUsers()) {
+            Path file = profile.getContentSource().getFile();
+            if (!Files.exists(file)) {
+                files.add(file);
+            }
+        }
+        return applyFileChanges(files);
+    }
+    
+    /**
+     * Loads a saved snapshot. Categories whose rules changed since it was saved, and those that
+     * depend on them, are classified again with the current rules. Profile files of the data
+     * directory that changed, went away or were added since are reloaded, and the snapshot is saved
+     * again; if a bundle changed, the profiles are loaded from it instead.
+     */
+    public int loadSnapshot(String snapshotFile, String dataDirectory) throws IOException {
+        long startTime = System.nanoTime();
+        SnapshotFile.Contents contents = SnapshotFile.read(Paths.get(snapshotFile), contentStore);
+        Set<Path> changed = contents.getChangedFiles();
+        for (Path file : changed) {
+            if (!file.getFileName().toString().endsWith(".md")) {
+                System.err.println("   ⚠ Warning: " + file + " changed since " + snapshotFile
+                    + " was saved; loading the profiles instead");
+                int loaded = loadProfiles(dataDirectory);
+                saveSnapshot(snapshotFile);
+                return loaded;
+            }
+        }
+        List<Path> reload = new ArrayList<>(changed);
+        Path dirPath = Paths.get(dataDirectory);
+        if (Files.isDirectory(dirPath)) {
+            Set<Path> listed = new HashSet<>();
+            for (Path file : contents.getFiles()) {
+                listed.add(file.toAbsolutePath().normalize());
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, QueryEngine::isProfileFile)) {
+                for (Path file : stream) {
+                    if (!listed.contains(file.toAbsolutePath().normalize())) {
+                        reload.add(file);
+                    }
+                }
+            }
         }
         
-        return loadedCount;
+        List<UserProfile> profiles = contents.getUsers();
+        for (UserProfile profile : profiles) {
+            dataStore.addUser(profile);
+        }
+        dataStore.commit();
+        metrics.recordLoadPhase("snapshot", profiles.size(), System.nanoTime() - startTime);
+        
+        synchronized (classificationLock) {
+            Classification current = classification;
+            Set<String> stale = current.graph.withDependents(rules.changedSince(contents.getRuleHashes()));
+            if (!stale.isEmpty()) {
+                System.err.println("   ⚠ Warning: " + snapshotFile + " was classified with other rules; reclassifying "
+                    + String.join(", ", stale));
+                long reclassifyStart = System.nanoTime();
+                List<UserProfile> loaded = dataStore.snapshot().getUsers();
+                dataStore.replaceCategories(reclassify(loaded, current, stale));
+                metrics.recordLoadPhase("rules", loaded.size(), System.nanoTime() - reclassifyStart);
+            }
+        }
+        if (!reload.isEmpty()) {
+            System.err.println("   ⚠ Warning: " + reload.size() + " profile file(s) changed, went away or were added since "
+                + snapshotFile + " was saved; reloading them");
+            applyFileChanges(reload);
+            saveSnapshot(snapshotFile);
+        }
+        return getTotalUsers();
     }
     
-    private void classifyUser(UserProfile profile) {
-        for (Classifier classifier : classifiers) {
-            if (classifier.matches(profile)) {
-                profile.addCategory(classifier.getCategoryName());
+    public long saveSnapshot(String snapshotFile) throws IOException {
+        DataStore.Snapshot snapshot;
+        Map<String, String> ruleHashes;
+        // Taken together, so a concurrent RELOAD_RULES cannot pair new rules with old categories.
+        synchronized (classificationLock) {
+            snapshot = dataStore.snapshot();
+            ruleHashes = rules.getDefinitionHashes();
+        }
+        return SnapshotFile.write(snapshot, ruleHashes, Paths.get(snapshotFile));
+    }
+    
+    private ProfileLoader.LoadStats loadSequentially(Iterable<Path> files) {
+        ProfileLoader.LoadStats loadStats = new ProfileLoader.LoadStats(1, 1);
+        List<ProfileLoader.StageStats> stages = loadStats.getStages();
+        for (Path filePath : files) {
+            try {
+                long start = System.nanoTime();
+                String content = Files.readString(filePath);
+                long read = System.nanoTime();
+                UserProfile profile = prepareProfile(filePath.getFileName().toString(), content,
+                    contentStore.locate(filePath, content));
+                long prepared = System.nanoTime();
+                dataStore.addUser(profile);
+                stages.get(0).record(read - start);
+                stages.get(1).record(prepared - read);
+                stages.get(2).record(System.nanoTime() - prepared);
+            } catch (Exception e) {
+                System.err.println("   ⚠ Warning: Error parsing " + filePath.getFileName() + ": " + e.getMessage());
             }
         }
+        return loadStats;
+    }
+    
+    private ProfileLoader.LoadStats loadSequentially(ProfileBundle bundle) throws IOException {
+        ProfileLoader.LoadStats loadStats = new ProfileLoader.LoadStats(1, 1);
+        List<ProfileLoader.StageStats> stages = loadStats.getStages();
+        long start = System.nanoTime();
+        ProfileBundle.Entry entry;
+        while ((entry = bundle.next()) != null) {
+            long read = System.nanoTime();
+            stages.get(0).record(read - start);
+            try {
+                UserProfile profile = prepareProfile(entry.getName(), entry.getContent(), entry.getSource());
+                long prepared = System.nanoTime();
+                dataStore.addUser(profile);
+                stages.get(1).record(prepared - read);
+                stages.get(2).record(System.nanoTime() - prepared);
+            } catch (Exception e) {
+                System.err.println("   ⚠ Warning: Error parsing " + entry.getName() + ": " + e.getMessage());
+            }
+            start = System.nanoTime();
+        }
+        return loadStats;
+    }
+    
+    public ProfileLoader.LoadStats getLastLoadStats() {
+        return lastLoadStats;
+    }
+    
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public EngineStats getStats() {
+        return stats;
+    }
+    
+    private UserProfile prepareProfile(String name, String content, ContentSource source) {
+        UserProfile profile = parseProfile(parser.parseUserId(name), content, source);
+        classifyUser(profile);
+        releaseContent(profile);
+        return profile;
+    }
+    
+    private UserProfile parseProfile(String userId, String content, ContentSource source) {
+        long start = System.nanoTime();
+        UserProfile profile = parser.parse(userId, content);
+        metrics.getParseLatency().record(System.nanoTime() - start);
+        profile.attachContent(source);
+        profile.attachTermPositions(Tokenizer.positions(content));
+        return profile;
+    }
+    
+    private void releaseContent(UserProfile profile) {
+        if (Config.isLazyContent()) {
+            profile.detachContent();
+        } else {
+            profile.detachText();
+        }
+    }
+    
+    public void classifyUser(UserProfile profile) {
+        Classification current = classification;
+        List<List<Classifier>> levels = current.graph.getLevels();
+        for (int level = 0; level < levels.size(); level++) {
+            List<Classifier> batch = levels.get(level);
+            for (int i = 0; i < batch.size(); i++) {
+                evaluate(batch.get(i), current.stats[level][i], profile);
+            }
+        }
+    }
+    
+    /**
+     * Classifies a batch level by level. Within a level every (classifier, slice of profiles) pair is
+     * independent, so they run concurrently; the next level starts once all of them are done.
+     */
+    public void classifyUsers(List<UserProfile> profiles) {
+        if (profiles.size() < CLASSIFY_BATCH_SIZE) {
+            profiles.forEach(this::classifyUser);
+            return;
+        }
+        Classification current = classification;
+        int slices = (profiles.size() + CLASSIFY_BATCH_SIZE - 1) / CLASSIFY_BATCH_SIZE;
+        List<List<Classifier>> levels = current.graph.getLevels();
+        for (int level = 0; level < levels.size(); level++) {
+            List<Classifier> batch = levels.get(level);
+            EngineMetrics.ClassifierStats[] levelStats = current.stats[level];
+            IntStream.range(0, batch.size() * slices).parallel().forEach(unit -> {
+                int i = unit / slices;
+                int from = (unit % slices) * CLASSIFY_BATCH_SIZE;
+                int to = Math.min(from + CLASSIFY_BATCH_SIZE, profiles.size());
+                for (int p = from; p < to; p++) {
+                    evaluate(batch.get(i), levelStats[i], profiles.get(p));
+                }
+            });
+        }
+    }
+    
+    private static int evaluate(Classifier classifier, EngineMetrics.ClassifierStats stats, UserProfile profile) {
+        long start = System.nanoTime();
+        int score = classifier.score(profile);
+        boolean matched = score != Classifier.NO_MATCH;
+        stats.record(System.nanoTime() - start, matched);
+        if (matched) {
+            profile.addCategory(classifier.getCategoryName(), score);
+        }
+        return score;
+    }
+    
+    /**
+     * Recompiles the rules file ({@code null} keeps the current path) and re-runs only the
+     * classifiers whose section changed, plus those that depend on them, across every loaded
+     * profile. The new memberships are published in one snapshot; on any error the old rules stay.
+     *
+     * @return the categories that were reclassified
+     */
+    public Set<String> reloadRules(String rulesFile) throws IOException {
+        synchronized (classificationLock) {
+            long startTime = System.nanoTime();
+            RuleFile updated = rulesFile != null ? RuleFile.load(Paths.get(rulesFile)) : rules.reload();
+            Classification next = new Classification(new ClassifierGraph(updated.getClassifiers()), metrics);
+            Set<String> changed = next.graph.withDependents(updated.changedSince(rules));
+            List<UserProfile> profiles = dataStore.snapshot().getUsers();
+            if (!changed.isEmpty()) {
+                dataStore.replaceCategories(reclassify(profiles, next, changed));
+            }
+            rules = updated;
+            classification = next;
+            metrics.recordLoadPhase("rules", changed.isEmpty() ? 0 : profiles.size(), System.nanoTime() - startTime);
+            return changed;
+        }
+    }
+    
+    private Map<String, int[]> reclassify(List<UserProfile> profiles, Classification next, Set<String> changed)
+            throws IOException {
+        List<Classifier> classifiers = new ArrayList<>();
+        List<EngineMetrics.ClassifierStats> classifierStats = new ArrayList<>();
+        List<List<Classifier>> levels = next.graph.getLevels();
+        for (int level = 0; level < levels.size(); level++) {
+            for (int i = 0; i < levels.get(level).size(); i++) {
+                if (changed.contains(levels.get(level).get(i).getCategoryName())) {
+                    classifiers.add(levels.get(level).get(i));
+                    classifierStats.add(next.stats[level][i]);
+                }
+            }
+        }
+        
+        int ordinals = 0;
+        for (UserProfile profile : profiles) {
+            ordinals = Math.max(ordinals, profile.getOrdinal() + 1);
+        }
+        Map<String, int[]> scores = new HashMap<>();
+        for (String category : changed) {
+            int[] column = new int[ordinals];
+            Arrays.fill(column, ScoreColumn.NONE);
+            scores.put(category, column);
+        }
+        int[][] columns = new int[classifiers.size()][];
+        for (int i = 0; i < classifiers.size(); i++) {
+            columns[i] = scores.get(classifiers.get(i).getCategoryName());
+        }
+        
+        try {
+            IntStream.range(0, profiles.size()).parallel().forEach(p -> {
+                UserProfile profile = profiles.get(p);
+                UserProfile scratch = withText(profile);
+                for (String category : profile.getCategories()) {
+                    if (!changed.contains(category)) {
+                        scratch.addCategory(category, profile.getScore(category));
+                    }
+                }
+                for (int i = 0; i < classifiers.size(); i++) {
+                    int score = evaluate(classifiers.get(i), classifierStats.get(i), scratch);
+                    columns[i][profile.getOrdinal()] = score != Classifier.NO_MATCH ? score : ScoreColumn.NONE;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return scores;
+    }
+    
+    /** A detached copy of the profile whose features include the text, re-parsed from the raw content. */
+    private UserProfile withText(UserProfile profile) {
+        if (profile.getFeatures().getNormalizedText() != null) {
+            return new UserProfile(profile.getUserId(), profile.getUuid(), null, profile.getFeatures());
+        }
+        return parser.parse(profile.getUserId(), profile.getRawContent());
+    }
+    
+    public Set<String> find(String expression) {
+        FindExpression parsed = FindExpression.parse(expression);
+        DataStore.Snapshot snapshot = dataStore.snapshot();
+        return snapshot.toUserIds(cached(snapshot, "FIND " + parsed, s -> findUsers(s, parsed, null, 0, 0)).getUsers());
+    }
+    
+    public FindResult find(FindRequest request) {
+        FindExpression parsed = FindExpression.parse(request.getExpression());
+        DataStore.Snapshot snapshot = dataStore.snapshot();
+        String key = "FIND " + parsed;
+        String category = null;
+        if (request.isScoreFiltered()) {
+            category = request.getScoreCategory() != null ? request.getScoreCategory() : scoredCategory(parsed);
+            key += " WHERE " + category + ".score " + request.getMinScore() + ".." + request.getMaxScore();
+        }
+        String scoreCategory = category;
+        return page(snapshot, cached(snapshot, key, s ->
+            findUsers(s, parsed, scoreCategory, request.getMinScore(), request.getMaxScore())), request);
+    }
+    
+    private static ResultCache.Entry findUsers(DataStore.Snapshot snapshot, FindExpression parsed,
+                                               String scoreCategory, int minScore, int maxScore) {
+        Set<String> categories = new HashSet<>();
+        Set<String> tags = new HashSet<>();
+        collectNames(parsed, categories, tags);
+        RoaringBitmap users = new QueryPlanner(snapshot).execute(parsed);
+        if (scoreCategory != null) {
+            users = RoaringBitmap.and(users, snapshot.getScoreColumn(scoreCategory).range(minScore, maxScore));
+            categories.add(scoreCategory);
+        }
+        return new ResultCache.Entry(snapshot, users, categories, tags);
+    }
+    
+    /** The categories and tags an expression may read; a bare name may be either. */
+    private static void collectNames(FindExpression expression, Set<String> categories, Set<String> tags) {
+        if (expression instanceof FindExpression.Operand) {
+            FindExpression.Operand operand = (FindExpression.Operand) expression;
+            if (operand.getKind() != FindExpression.Operand.Kind.TAG) {
+                categories.add(operand.getName());
+            }
+            if (operand.getKind() != FindExpression.Operand.Kind.CATEGORY) {
+                tags.add(operand.getName());
+            }
+        } else if (expression instanceof FindExpression.Not) {
+            collectNames(((FindExpression.Not) expression).getOperand(), categories, tags);
+        } else {
+            List<FindExpression> operands = expression instanceof FindExpression.And
+                ? ((FindExpression.And) expression).getOperands()
+                : ((FindExpression.Or) expression).getOperands();
+            for (FindExpression operand : operands) {
+                collectNames(operand, categories, tags);
+            }
+        }
+    }
+    
+    /** Users whose parsed metrics satisfy every condition of the request's expression. */
+    public FindResult filter(FindRequest request) {
+        if (request.isScoreFiltered()) {
+            throw new IllegalArgumentException("FILTER takes metric conditions, not WHERE score");
+        }
+        MetricFilter filter = MetricFilter.parse(request.getExpression());
+        DataStore.Snapshot snapshot = dataStore.snapshot();
+        return page(snapshot, cached(snapshot, "FILTER " + filter, s ->
+            new ResultCache.Entry(s, new QueryPlanner(s).filter(filter), Set.of(), Set.of())), request);
+    }
+    
+    /**
+     * Serves a query from the result cache, or runs it and caches the result. The key must be the
+     * normalized query, so equivalent spellings share an entry.
+     */
+    private ResultCache.Entry cached(DataStore.Snapshot snapshot, String key,
+                                     Function<DataStore.Snapshot, ResultCache.Entry> query) {
+        ResultCache.Entry entry = resultCache.get(key, snapshot);
+        if (entry == null) {
+            entry = query.apply(snapshot);
+            resultCache.put(key, entry);
+        }
+        return entry;
+    }
+    
+    private static FindResult page(DataStore.Snapshot snapshot, ResultCache.Entry entry, FindRequest request) {
+        int total = entry.getUsers().getCardinality();
+        if (request.isCountOnly()) {
+            return new FindResult(total, 0, List.of(), false, snapshot.getUserCount());
+        }
+        
+        int[] ordinals = entry.getOrderedOrdinals(snapshot);
+        int start = request.getAfter() != null ? firstAfter(snapshot, ordinals, request.getAfter()) : 0;
+        start = (int) Math.min((long) start + request.getOffset(), ordinals.length);
+        int end = request.getLimit() >= 0
+            ? (int) Math.min((long) start + request.getLimit(), ordinals.length)
+            : ordinals.length;
+        
+        List<String> userIds = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            userIds.add(snapshot.getUser(ordinals[i]).getUserId());
+        }
+        return new FindResult(total, start, userIds, end < ordinals.length, snapshot.getUserCount());
+    }
+    
+    /** Users whose profile text contains every word and phrase of the query, in id order. */
+    public FindResult search(String query) {
+        SearchQuery parsed = SearchQuery.parse(query);
+        DataStore.Snapshot snapshot = dataStore.snapshot();
+        ResultCache.Entry entry = cached(snapshot, "SEARCH " + parsed, s ->
+            new ResultCache.Entry(s, new QueryPlanner(s).search(parsed), Set.of(), Set.of()));
+        int[] ordinals = entry.getOrderedOrdinals(snapshot);
+        List<String> userIds = new ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) {
+            userIds.add(snapshot.getUser(ordinal).getUserId());
+        }
+        return new FindResult(userIds.size(), 0, userIds, false, snapshot.getUserCount());
+    }
+    
+    private static String scoredCategory(FindExpression expression) {
+        if (expression instanceof FindExpression.Operand
+                && ((FindExpression.Operand) expression).getKind() != FindExpression.Operand.Kind.TAG) {
+            return ((FindExpression.Operand) expression).getName();
+        }
+        throw new IllegalArgumentException("WHERE score needs a single category; use WHERE <category>.score");
+    }
+    
+    /** Aggregates over the current snapshot; every call on the result sees the same users. */
+    public Aggregator aggregate() {
+        return new Aggregator(dataStore.snapshot());
+    }
+    
+    /**
+     * The {@code k} highest-scoring members of a category, read from its sorted score index. Equal
+     * scores go in id order, the order shards are merged in, so a tie at the cut keeps the same users.
+     */
+    public List<ScoredUser> top(String category, int k) {
+        DataStore.Snapshot snapshot = dataStore.snapshot();
+        ScoreColumn column = snapshot.getScoreColumn(category);
+        List<UserProfile> users = new ArrayList<>();
+        for (int ordinal : column.top(k)) {
+            users.add(snapshot.getUser(ordinal));
+        }
+        users.sort(Comparator.comparingInt((UserProfile user) -> column.get(user.getOrdinal())).reversed()
+            .thenComparing((a, b) -> UserIds.compare(a.getId(), b.getId())));
+        List<ScoredUser> top = new ArrayList<>();
+        for (UserProfile user : users.subList(0, Math.min(k, users.size()))) {
+            top.add(new ScoredUser(user.getUserId(), column.get(user.getOrdinal())));
+        }
+        return top;
+    }
+    
+    private static int firstAfter(DataStore.Snapshot snapshot, int[] ordinals, String cursor) {
+        int low = 0;
+        int high = ordinals.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (UserIdOrder.INSTANCE.compare(snapshot.getUser(ordinals[mid]).getUserId(), cursor) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
     
     public Set<String> findByCategory(String category) {
@@ -78,15 +631,102 @@ public class QueryEngine {
         return profile != null ? profile.getRawContent() : null;
     }
     
-    public boolean addTag(String userId, String tag) {
-        return dataStore.addTagToUser(userId, tag);
+    public boolean writeUserProfile(String userId, OutputStream out) throws IOException {
+        UserProfile profile = dataStore.getUser(userId);
+        if (profile == null) {
+            return false;
+        }
+        profile.writeRawContent(out);
+        return true;
+    }
+    
+    public boolean addTag(String userId, String tag) throws IOException {
+        return mutateTag(TagLog.Op.ADD, userId, tag);
     }
     
-    public boolean removeTag(String userId, String tag) {
-        return dataStore.removeTagFromUser(userId, tag);
+    public boolean removeTag(String userId, String tag) throws IOException {
+        return mutateTag(TagLog.Op.REMOVE, userId, tag);
+    }
+    
+    public int openTagLog(String directory) throws IOException {
+        TagLog log = new TagLog(Paths.get(directory), Config.getTagLogSyncPolicy(), Config.getTagLogGroupCommitMillis());
+        int replayed = log.recover(dataStore::clearTags, this::applyTag);
+        synchronized (tagMutationLock) {
+            tagLog = log;
+        }
+        return replayed;
+    }
+    
+    public void close() throws IOException {
+        synchronized (tagMutationLock) {
+            if (tagLog != null) {
+                tagLog.close();
+                tagLog = null;
+            }
+        }
+    }
+    
+    private boolean mutateTag(TagLog.Op op, String userId, String tag) throws IOException {
+        TagLog log;
+        long sequence;
+        // Log order must match the order the store applied the mutations in; only the fsync wait is outside.
+        synchronized (tagMutationLock) {
+            if (tagLog == null) {
+                return applyTag(op, userId, tag);
+            }
+            UserProfile profile = dataStore.getUser(userId);
+            if (profile == null || op == TagLog.Op.REMOVE && !profile.hasTag(tag)) {
+                return false;
+            }
+            log = tagLog;
+            // Written before it is applied, so a failed append leaves the store as it was.
+            sequence = log.append(op, userId, tag);
+            applyTag(op, userId, tag);
+            if (log.getRecordsSinceCheckpoint() >= Config.getTagLogCheckpointThreshold()) {
+                log.checkpoint(this::forEachTag);
+            }
+        }
+        log.awaitDurable(sequence);
+        return true;
+    }
+    
+    private boolean applyTag(TagLog.Op op, String userId, String tag) {
+        return op == TagLog.Op.ADD
+            ? dataStore.addTagToUser(userId, tag)
+            : dataStore.removeTagFromUser(userId, tag);
+    }
+    
+    private void forEachTag(TagLog.Replay visitor) {
+        for (UserProfile profile : dataStore.snapshot().getUsers()) {
+            for (String tag : profile.getTags()) {
+                visitor.apply(TagLog.Op.ADD, profile.getUserId(), tag);
+            }
+        }
     }
     
     public int getTotalUsers() {
         return dataStore.getUserCount();
     }
+    
+    /** A compiled classifier graph with its metrics, swapped as a unit when the rules are reloaded. */
+    private static final class Classification {
+        private final ClassifierGraph graph;
+        private final EngineMetrics.ClassifierStats[][] stats;
+        
+        Classification(ClassifierGraph graph, EngineMetrics metrics) {
+            this.graph = graph;
+            List<List<Classifier>> levels = graph.getLevels();
+            this.stats = new EngineMetrics.ClassifierStats[levels.size()][];
+            for (int level = 0; level < levels.size(); level++) {
+                stats[level] = new EngineMetrics.ClassifierStats[levels.get(level).size()];
+                for (int i = 0; i < levels.get(level).size(); i++) {
+                    Classifier classifier = levels.get(level).get(i);
+                    stats[level][i] = metrics.classifier(classifier.getCategoryName());
+                    if (classifier.getRules() != null) {
+                        stats[level][i].setRules(classifier.getRules().getStats());
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package engine;
+
+import metrics.CacheStats;
+import store.DataStore;
+import store.RoaringBitmap;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Query results keyed by normalized query text, bounded by their estimated size and evicted least
+ * recently used first. Each entry records the snapshot generation and the generation of every
+ * category and tag its query read, and is served only while none of them changed: a tag mutation
+ * invalidates the queries that name that tag and nothing else.
+ */
+class ResultCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    
+    private final long maxBytes;
+    private final CacheStats stats;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    
+    ResultCache(long maxBytes, CacheStats stats) {
+        this.maxBytes = maxBytes;
+        this.stats = stats;
+    }
+    
+    /** The cached result of {@code key} if it is still exact for {@code snapshot}, otherwise null. */
+    Entry get(String key, DataStore.Snapshot snapshot) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isCurrent(snapshot)) {
+                stats.recordHit();
+                return entry;
+            }
+            if (entry != null) {
+                remove(key);
+                stats.recordInvalidation();
+            }
+            stats.recordMiss();
+            return null;
+        }
+    }
+    
+    void put(String key, Entry entry) {
+        long size = ENTRY_OVERHEAD_BYTES + key.length() * 2L + entry.getSizeInBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        entry.bytes = size;
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                stats.recordEviction();
+            }
+            stats.setSize(entries.size(), bytes);
+        }
+    }
+    
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+            stats.setSize(entries.size(), bytes);
+        }
+    }
+    
+    /** The users a query matched, and what they were computed from. */
+    static final class Entry {
+        private final RoaringBitmap users;
+        private final long generation;
+        private final String[] categories;
+        private final long[] categoryGenerations;
+        private final String[] tags;
+        private final long[] tagGenerations;
+        private volatile int[] orderedOrdinals;
+        private long bytes;
+        
+        Entry(DataStore.Snapshot snapshot, RoaringBitmap users, Collection<String> categories, Collection<String> tags) {
+            this.users = users;
+            this.generation = snapshot.getGeneration();
+            this.categories = categories.toArray(new String[0]);
+            this.categoryGenerations = new long[this.categories.length];
+            for (int i = 0; i < this.categories.length; i++) {
+                categoryGenerations[i] = snapshot.getCategoryGeneration(this.categories[i]);
+            }
+            this.tags = tags.toArray(new String[0]);
+            this.tagGenerations = new long[this.tags.length];
+            for (int i = 0; i < this.tags.length; i++) {
+                tagGenerations[i] = snapshot.getTagGeneration(this.tags[i]);
+            }
+        }
+        
+        private boolean isCurrent(DataStore.Snapshot snapshot) {
+            if (snapshot.getGeneration() != generation) {
+                return false;
+            }
+            for (int i = 0; i < categories.length; i++) {
+                if (snapshot.getCategoryGeneration(categories[i]) != categoryGenerations[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < tags.length; i++) {
+                if (snapshot.getTagGeneration(tags[i]) != tagGenerations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        RoaringBitmap getUsers() {
+            return users;
+        }
+        
+        /**
+         * The users in id order, sorted on first use. Id ranks only change with the snapshot
+         * generation, so any snapshot the entry is current for gives the same order.
+         */
+        int[] getOrderedOrdinals(DataStore.Snapshot snapshot) {
+            int[] ordinals = orderedOrdinals;
+            if (ordinals == null) {
+                ordinals = snapshot.toOrderedOrdinals(users);
+                orderedOrdinals = ordinals;
+            }
+            return ordinals;
+        }
+        
+        /** Counts the ordered ordinals up front, so sorting later does not grow the entry. */
+        private long getSizeInBytes() {
+            return users.getSizeInBytes() + users.getCardinality() * 4L;
+        }
+    }
+}
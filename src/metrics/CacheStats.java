@@ -0,0 +1,66 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Lookups, evictions and current size of the query result cache. */
+public class CacheStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile int entries;
+    private volatile long bytes;
+    
+    public void recordHit() {
+        hits.increment();
+    }
+    
+    public void recordMiss() {
+        misses.increment();
+    }
+    
+    /** A cached result found stale because a user, category or tag it depends on changed. */
+    public void recordInvalidation() {
+        invalidations.increment();
+    }
+    
+    public void recordEviction() {
+        evictions.increment();
+    }
+    
+    public void setSize(int entries, long bytes) {
+        this.entries = entries;
+        this.bytes = bytes;
+    }
+    
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /** Lookups that had to run the query, stale entries included. */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+    
+    public long getEvictions() {
+        return evictions.sum();
+    }
+    
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total > 0 ? (double) hit / total : 0.0;
+    }
+    
+    public int getEntries() {
+        return entries;
+    }
+    
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,118 @@
+package metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EngineMetrics {
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    private final Map<String, ClassifierStats> classifiers = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, PhaseStats> loadPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final CacheStats resultCache = new CacheStats();
+    
+    public LatencyHistogram command(String name) {
+        return commands.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+    
+    public ClassifierStats classifier(String name) {
+        synchronized (classifiers) {
+            return classifiers.computeIfAbsent(name, k -> new ClassifierStats());
+        }
+    }
+    
+    public LatencyHistogram getParseLatency() {
+        return parseLatency;
+    }
+    
+    public CacheStats getResultCache() {
+        return resultCache;
+    }
+    
+    public void recordLoadPhase(String phase, long items, long nanos) {
+        synchronized (loadPhases) {
+            loadPhases.computeIfAbsent(phase, k -> new PhaseStats()).record(items, nanos);
+        }
+    }
+    
+    public Map<String, LatencyHistogram> getCommands() {
+        return new LinkedHashMap<>(commands);
+    }
+    
+    public Map<String, ClassifierStats> getClassifiers() {
+        synchronized (classifiers) {
+            return new LinkedHashMap<>(classifiers);
+        }
+    }
+    
+    public Map<String, PhaseStats> getLoadPhases() {
+        synchronized (loadPhases) {
+            return new LinkedHashMap<>(loadPhases);
+        }
+    }
+    
+    public static class ClassifierStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong matches = new AtomicLong();
+        private volatile RuleStats rules;
+        
+        public void record(long nanos, boolean matched) {
+            latency.record(nanos);
+            if (matched) {
+                matches.incrementAndGet();
+            }
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+        
+        public long getEvaluations() {
+            return latency.getCount();
+        }
+        
+        public long getMatches() {
+            return matches.get();
+        }
+        
+        public double getMatchRate() {
+            long evaluations = latency.getCount();
+            return evaluations > 0 ? (double) matches.get() / evaluations : 0.0;
+        }
+        
+        public void setRules(RuleStats rules) {
+            this.rules = rules;
+        }
+        
+        /** Early-exit counters, or null when the classifier is not rule-based. */
+        public RuleStats getRules() {
+            return rules;
+        }
+    }
+    
+    public static class PhaseStats {
+        private long runs;
+        private long items;
+        private long nanos;
+        
+        synchronized void record(long items, long nanos) {
+            this.runs++;
+            this.items += items;
+            this.nanos += nanos;
+        }
+        
+        public synchronized long getRuns() {
+            return runs;
+        }
+        
+        public synchronized long getItems() {
+            return items;
+        }
+        
+        public synchronized long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package metrics;
+
+import model.Metric;
+import store.DataStore;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class EngineStats implements EngineStatsMXBean {
+    public static final String OBJECT_NAME = "divar:type=QueryEngine";
+    
+    private final EngineMetrics metrics;
+    private final Supplier<DataStore.Snapshot> snapshots;
+    
+    public EngineStats(EngineMetrics metrics, Supplier<DataStore.Snapshot> snapshots) {
+        this.metrics = metrics;
+        this.snapshots = snapshots;
+    }
+    
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("   ⚠ Warning: Could not register JMX stats: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public int getUserCount() {
+        return snapshots.get().getUserCount();
+    }
+    
+    @Override
+    public int getTagCount() {
+        return snapshots.get().getTags().size();
+    }
+    
+    @Override
+    public int getTermCount() {
+        return snapshots.get().getTerms().size();
+    }
+    
+    @Override
+    public long getIndexBytes() {
+        DataStore.Snapshot snapshot = snapshots.get();
+        long bytes = snapshot.getAllUsers().getSizeInBytes();
+        for (String category : snapshot.getCategories()) {
+            bytes += snapshot.getCategoryBitmap(category).getSizeInBytes();
+        }
+        for (String tag : snapshot.getTags()) {
+            bytes += snapshot.getTagBitmap(tag).getSizeInBytes();
+        }
+        for (String term : snapshot.getTerms()) {
+            bytes += snapshot.getPostings(term).getSizeInBytes();
+        }
+        for (Metric metric : Metric.values()) {
+            bytes += snapshot.getMetricColumn(metric).getSizeInBytes();
+        }
+        return bytes;
+    }
+    
+    @Override
+    public Map<String, Long> getCategorySizes() {
+        DataStore.Snapshot snapshot = snapshots.get();
+        Map<String, Long> sizes = new TreeMap<>();
+        for (String category : snapshot.getCategories()) {
+            sizes.put(category, (long) snapshot.getCategoryBitmap(category).getCardinality());
+        }
+        return sizes;
+    }
+    
+    @Override
+    public Map<String, LatencySummary> getCommandLatencies() {
+        Map<String, LatencySummary> latencies = new TreeMap<>();
+        metrics.getCommands().forEach((command, histogram) -> latencies.put(command, LatencySummary.of(histogram)));
+        return latencies;
+    }
+    
+    @Override
+    public Map<String, LatencySummary> getClassifierLatencies() {
+        Map<String, LatencySummary> latencies = new LinkedHashMap<>();
+        metrics.getClassifiers().forEach((name, stats) -> latencies.put(name, LatencySummary.of(stats.getLatency())));
+        return latencies;
+    }
+    
+    @Override
+    public Map<String, Double> getClassifierMatchRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        metrics.getClassifiers().forEach((name, stats) -> rates.put(name, stats.getMatchRate()));
+        return rates;
+    }
+    
+    @Override
+    public Map<String, Double> getClassifierRuleSkipRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        metrics.getClassifiers().forEach((name, stats) -> {
+            if (stats.getRules() != null) {
+                rates.put(name, stats.getRules().getRuleSkipRate());
+            }
+        });
+        return rates;
+    }
+    
+    @Override
+    public Map<String, Long> getLoadPhaseNanos() {
+        Map<String, Long> phases = new LinkedHashMap<>();
+        metrics.getLoadPhases().forEach((phase, stats) -> phases.put(phase, stats.getNanos()));
+        return phases;
+    }
+    
+    @Override
+    public long getResultCacheHits() {
+        return metrics.getResultCache().getHits();
+    }
+    
+    @Override
+    public long getResultCacheMisses() {
+        return metrics.getResultCache().getMisses();
+    }
+    
+    @Override
+    public double getResultCacheHitRate() {
+        return metrics.getResultCache().getHitRate();
+    }
+    
+    @Override
+    public long getResultCacheBytes() {
+        return metrics.getResultCache().getBytes();
+    }
+}
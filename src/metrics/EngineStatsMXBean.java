@@ -0,0 +1,20 @@
+package metrics;
+
+import java.util.Map;
+
+public interface EngineStatsMXBean {
+    int getUserCount();
+    int getTagCount();
+    int getTermCount();
+    long getIndexBytes();
+    Map<String, Long> getCategorySizes();
+    Map<String, LatencySummary> getCommandLatencies();
+    Map<String, LatencySummary> getClassifierLatencies();
+    Map<String, Double> getClassifierMatchRates();
+    Map<String, Double> getClassifierRuleSkipRates();
+    Map<String, Long> getLoadPhaseNanos();
+    long getResultCacheHits();
+    long getResultCacheMisses();
+    double getResultCacheHitRate();
+    long getResultCacheBytes();
+}
@@ -0,0 +1,45 @@
+package metrics;
+
+import javax.management.ConstructorParameters;
+
+public class LatencySummary {
+    private final long count;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    
+    @ConstructorParameters({"count", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+    public LatencySummary(long count, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.count = count;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+    
+    public static LatencySummary of(LatencyHistogram histogram) {
+        return new LatencySummary(histogram.getCount(), histogram.getPercentile(50),
+            histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMaxNanos());
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+    
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+    
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+    
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** How much work early exit saved for one rule-based classifier. */
+public class RuleStats {
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder rulesRun = new LongAdder();
+    private final LongAdder rulesSkipped = new LongAdder();
+    private final LongAdder textScans = new LongAdder();
+    
+    public void record(int run, int skipped, boolean scanned) {
+        evaluations.increment();
+        rulesRun.add(run);
+        rulesSkipped.add(skipped);
+        if (scanned) {
+            textScans.increment();
+        }
+    }
+    
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+    
+    public long getRulesRun() {
+        return rulesRun.sum();
+    }
+    
+    public long getRulesSkipped() {
+        return rulesSkipped.sum();
+    }
+    
+    public long getTextScans() {
+        return textScans.sum();
+    }
+    
+    public double getRuleSkipRate() {
+        long skipped = rulesSkipped.sum();
+        long total = rulesRun.sum() + skipped;
+        return total > 0 ? (double) skipped / total : 0.0;
+    }
+    
+    public double getScanSkipRate() {
+        long evaluated = evaluations.sum();
+        return evaluated > 0 ? 1.0 - (double) textScans.sum() / evaluated : 0.0;
+    }
+}
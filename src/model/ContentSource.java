@@ -0,0 +1,14 @@
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+public interface ContentSource {
+    String read() throws IOException;
+    void writeTo(OutputStream out) throws IOException;
+    Path getFile();
+    /** Where the text starts in {@link #getFile()}, or -1 when the file does not hold it verbatim. */
+    long getOffset();
+    int getLength();
+}
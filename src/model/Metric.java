@@ -0,0 +1,40 @@
+package model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum Metric {
+    SUPPLY_TOTAL_POSTS("supply_total_posts"),
+    SUPPLY_PUBLISHED_POSTS("supply_published_posts"),
+    SUPPLY_TOTAL_VIEWS("supply_total_views"),
+    SUPPLY_TOTAL_REVENUE("supply_total_revenue"),
+    SUPPLY_UNIQUE_CATEGORIES("supply_unique_categories"),
+    SUPPLY_UNIQUE_CITIES("supply_unique_cities"),
+    SUPPLY_TOTAL_CHATS("supply_total_chats"),
+    SUPPLY_TOTAL_CALLS("supply_total_calls"),
+    DEMAND_SEARCHES_MADE("demand_searches_made"),
+    DEMAND_POSTS_CONTACTED("demand_posts_contacted"),
+    DEMAND_POSTS_VIEWED("demand_posts_viewed");
+    
+    private static final Map<String, Metric> BY_KEY = new HashMap<>();
+    
+    static {
+        for (Metric metric : values()) {
+            BY_KEY.put(metric.key, metric);
+        }
+    }
+    
+    private final String key;
+    
+    Metric(String key) {
+        this.key = key;
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public static Metric fromKey(String key) {
+        return BY_KEY.get(key);
+    }
+}
@@ -0,0 +1,53 @@
+package model;
+
+public class ProfileFeatures {
+    private final long[] metrics;
+    private final int presentMask;
+    private final boolean contactChatDisabled;
+    private final String[] categorySlugs;
+    private final String normalizedText;
+    
+    public ProfileFeatures(long[] metrics, int presentMask, boolean contactChatDisabled,
+                           String[] categorySlugs, String normalizedText) {
+        this.metrics = metrics;
+        this.presentMask = presentMask;
+        this.contactChatDisabled = contactChatDisabled;
+        this.categorySlugs = categorySlugs;
+        this.normalizedText = normalizedText;
+    }
+    
+    public long get(Metric metric) {
+        return metrics[metric.ordinal()];
+    }
+    
+    public boolean has(Metric metric) {
+        return (presentMask & (1 << metric.ordinal())) != 0;
+    }
+    
+    public boolean isContactChatDisabled() {
+        return contactChatDisabled;
+    }
+    
+    public String[] getCategorySlugs() {
+        return categorySlugs;
+    }
+    
+    public boolean hasCategorySlugContaining(String... fragments) {
+        for (String slug : categorySlugs) {
+            for (String fragment : fragments) {
+                if (slug.contains(fragment)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    public String getNormalizedText() {
+        return normalizedText;
+    }
+    
+    public ProfileFeatures withoutText() {
+        return new ProfileFeatures(metrics, presentMask, contactChatDisabled, categorySlugs, null);
+    }
+}
@@ -0,0 +1,111 @@
+package model;
+
+import store.UserIdOrder;
+
+/**
+ * User ids are {@code user_<digits>}, but profiles and indexes keep them as a single {@code long}
+ * and only format them for output. The low 56 bits hold the value of the digits and the top byte
+ * counts their leading zeros, so {@code user_007} survives the round trip. Ids that do not fit, with
+ * more than 17 digits or a value of 2^56 or more, are numbered in {@link Vocabulary#LONG_USER_IDS}
+ * and kept as that number with the sign bit set. That number only holds within one process.
+ */
+public final class UserIds {
+    private static final String PREFIX = "user_";
+    private static final int ZEROS_SHIFT = 56;
+    private static final long VALUE_MASK = (1L << ZEROS_SHIFT) - 1;
+    private static final int MAX_ZEROS = 127;
+    private static final int MAX_DIGITS = 17;
+    private static final long LONG_ID = Long.MIN_VALUE;
+    
+    private UserIds() {
+    }
+    
+    public static long parse(String userId) {
+        long id = encode(userId);
+        if (id == -1) {
+            if (!isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user id: " + userId);
+            }
+            return LONG_ID | Vocabulary.LONG_USER_IDS.intern(userId);
+        }
+        return id;
+    }
+    
+    /**
+     * The numeric form of {@code userId}, or -1 if it is not a user id. A long id that no profile
+     * was given yet is not registered and also gives -1; other long ids are negative.
+     */
+    public static long tryParse(String userId) {
+        long id = encode(userId);
+        if (id != -1 || !isValid(userId)) {
+            return id;
+        }
+        int number = Vocabulary.LONG_USER_IDS.find(userId);
+        return number >= 0 ? LONG_ID | number : -1;
+    }
+    
+    /** Whether {@code userId} is {@code user_} followed by digits. */
+    public static boolean isValid(String userId) {
+        if (userId == null || !userId.startsWith(PREFIX) || userId.length() == PREFIX.length()) {
+            return false;
+        }
+        for (int i = PREFIX.length(); i < userId.length(); i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /** Whether {@code id} came from the long id table rather than the digits themselves. */
+    private static boolean isLong(long id) {
+        return id < 0;
+    }
+    
+    /** The 56-bit form of {@code userId}, or -1 if it is invalid or too long for it. */
+    private static long encode(String userId) {
+        if (userId == null || !userId.startsWith(PREFIX) || userId.length() == PREFIX.length()) {
+            return -1;
+        }
+        int start = PREFIX.length();
+        while (start < userId.length() - 1 && userId.charAt(start) == '0') {
+            start++;
+        }
+        int zeros = start - PREFIX.length();
+        if (zeros > MAX_ZEROS || userId.length() - start > MAX_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < userId.length(); i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= VALUE_MASK ? (long) zeros << ZEROS_SHIFT | value : -1;
+    }
+    
+    public static String format(long id) {
+        if (isLong(id)) {
+            return Vocabulary.LONG_USER_IDS.name((int) (id & ~LONG_ID));
+        }
+        int zeros = (int) (id >>> ZEROS_SHIFT);
+        String value = Long.toString(id & VALUE_MASK);
+        return zeros == 0 ? PREFIX + value : PREFIX + "0".repeat(zeros) + value;
+    }
+    
+    /** Orders ids the way {@link store.UserIdOrder} orders their formatted forms. */
+    public static int compare(long a, long b) {
+        if (isLong(a) || isLong(b)) {
+            return a == b ? 0 : UserIdOrder.INSTANCE.compare(format(a), format(b));
+        }
+        int byValue = Long.compare(a & VALUE_MASK, b & VALUE_MASK);
+        if (byValue != 0 || a == b) {
+            return byValue;
+        }
+        // Same value, different leading zeros: rare enough to compare the strings.
+        return format(a).compareTo(format(b));
+    }
+}
@@ -1,25 +1,77 @@
 package model;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * One user's profile. Categories are kept as a bitmask of {@link Vocabulary#CATEGORIES} ordinals
+ * and tags as a sorted array of {@link Vocabulary#TAGS} ids; the set getters are read-only views
+ * over them.
+ */
 public class UserProfile {
-    private final String userId;
+    private static final int[] NONE = new int[0];
+    
+    private final long id;
     private final String uuid;
-    private final String rawContent;
-    private final Set<String> categories;
-    private final Set<String> tags;
+    private String rawContent;
+    private ContentSource contentSource;
+    private ProfileFeatures features;
+    private volatile long categoryMask;
+    private volatile int[] scores = NONE;
+    private volatile int[] tagIds = NONE;
+    private Map<String, int[]> termPositions;
+    private int indexedTermCount;
+    private int ordinal = -1;
+    
+    public UserProfile(String userId, String uuid, String rawContent, ProfileFeatures features) {
+        this(UserIds.parse(userId), uuid, rawContent, features);
+    }
     
-    public UserProfile(String userId, String uuid, String rawContent) {
-        this.userId = userId;
+    private UserProfile(long id, String uuid, String rawContent, ProfileFeatures features) {
+        this.id = id;
         this.uuid = uuid;
         this.rawContent = rawContent;
-        this.categories = new HashSet<>();
-        this.tags = new HashSet<>();
+        this.features = features;
+    }
+    
+    /**
+     * A copy to change while this profile stays as it is: content and features are shared,
+     * categories, scores and tags are the copy's own.
+     */
+    public UserProfile copy() {
+        UserProfile copy = new UserProfile(id, uuid, rawContent, features);
+        copy.contentSource = contentSource;
+        copy.categoryMask = categoryMask;
+        copy.scores = scores;
+        copy.tagIds = tagIds;
+        copy.indexedTermCount = indexedTermCount;
+        copy.ordinal = ordinal;
+        return copy;
     }
     
     public String getUserId() {
-        return userId;
+        return UserIds.format(id);
+    }
+    
+    /** The user id in the numeric form of {@link UserIds}. */
+    public long getId() {
+        return id;
+    }
+    
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
     }
     
     public String getUuid() {
@@ -27,34 +79,236 @@ public class UserProfile {
     }
     
     public String getRawContent() {
-        return rawContent;
+        if (rawContent != null) {
+            return rawContent;
+        }
+        try {
+            return contentSource.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    public void writeRawContent(OutputStream out) throws IOException {
+        if (rawContent != null) {
+            out.write(rawContent.getBytes(StandardCharsets.UTF_8));
+        } else {
+            contentSource.writeTo(out);
+        }
+    }
+    
+    public void attachContent(ContentSource source) {
+        this.contentSource = source;
+    }
+    
+    public void detachContent() {
+        this.rawContent = null;
+        detachText();
+    }
+    
+    /** Drops the normalized text once the classifiers have read it; the raw content stays. */
+    public void detachText() {
+        this.features = features.withoutText();
+    }
+    
+    /** Term positions of the profile text, kept only until the store has indexed them. */
+    public void attachTermPositions(Map<String, int[]> positions) {
+        this.termPositions = positions;
+    }
+    
+    public Map<String, int[]> takeTermPositions() {
+        Map<String, int[]> positions = termPositions;
+        termPositions = null;
+        return positions;
+    }
+    
+    /** How many terms the store indexed this profile under, so unindexing can tell when it found them all. */
+    public int getIndexedTermCount() {
+        return indexedTermCount;
+    }
+    
+    public void setIndexedTermCount(int count) {
+        this.indexedTermCount = count;
+    }
+    
+    public ContentSource getContentSource() {
+        return contentSource;
+    }
+    
+    public boolean isContentResident() {
+        return rawContent != null;
+    }
+    
+    public ProfileFeatures getFeatures() {
+        return features;
     }
     
     public Set<String> getCategories() {
-        return categories;
+        return new CategorySet(categoryMask);
     }
     
     public Set<String> getTags() {
-        return tags;
+        return new TagSet(tagIds);
     }
     
-    public void addCategory(String category) {
-        categories.add(category);
+    /** Bit {@code i} is set when the user is in the category with ordinal {@code i}. */
+    public long getCategoryMask() {
+        return categoryMask;
     }
     
-    public void addTag(String tag) {
-        tags.add(tag);
+    /** The ids of the user's tags in ascending order; the array is shared and must not be modified. */
+    public int[] getTagIds() {
+        return tagIds;
     }
     
-    public boolean removeTag(String tag) {
-        return tags.remove(tag);
+    public synchronized void addCategory(String category) {
+        categoryMask |= 1L << Vocabulary.CATEGORIES.intern(category);
+    }
+    
+    /** Adds the category together with the classifier score that put the user in it. */
+    public synchronized void addCategory(String category, int score) {
+        int ordinal = Vocabulary.CATEGORIES.intern(category);
+        int[] updated = Arrays.copyOf(scores, Math.max(scores.length, ordinal + 1));
+        updated[ordinal] = score;
+        scores = updated;
+        categoryMask |= 1L << ordinal;
+    }
+    
+    /** The classifier score for a category the user is in, or 0 when none was recorded. */
+    public int getScore(String category) {
+        int ordinal = Vocabulary.CATEGORIES.find(category);
+        int[] current = scores;
+        return ordinal >= 0 && ordinal < current.length ? current[ordinal] : 0;
+    }
+    
+    public synchronized void removeCategory(String category) {
+        int ordinal = Vocabulary.CATEGORIES.find(category);
+        if (ordinal < 0) {
+            return;
+        }
+        categoryMask &= ~(1L << ordinal);
+        if (ordinal < scores.length && scores[ordinal] != 0) {
+            int[] updated = scores.clone();
+            updated[ordinal] = 0;
+            scores = updated;
+        }
+    }
+    
+    public synchronized void addTag(String tag) {
+        int tagId = Vocabulary.TAGS.intern(tag);
+        int[] current = tagIds;
+        int at = Arrays.binarySearch(current, tagId);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        updated[at] = tagId;
+        System.arraycopy(current, at, updated, at + 1, current.length - at);
+        tagIds = updated;
+    }
+    
+    public synchronized boolean removeTag(String tag) {
+        int[] current = tagIds;
+        int at = Arrays.binarySearch(current, Vocabulary.TAGS.find(tag));
+        if (at < 0) {
+            return false;
+        }
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        System.arraycopy(current, at + 1, updated, at, updated.length - at);
+        tagIds = updated.length > 0 ? updated : NONE;
+        return true;
     }
     
     public boolean hasCategory(String category) {
-        return categories.contains(category);
+        int ordinal = Vocabulary.CATEGORIES.find(category);
+        return ordinal >= 0 && (categoryMask & 1L << ordinal) != 0;
     }
     
     public boolean hasTag(String tag) {
-        return tags.contains(tag);
+        int tagId = Vocabulary.TAGS.find(tag);
+        return tagId >= 0 && Arrays.binarySearch(tagIds, tagId) >= 0;
+    }
+    
+    private static final class CategorySet extends AbstractSet<String> {
+        private final long mask;
+        
+        CategorySet(long mask) {
+            this.mask = mask;
+        }
+        
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private long remaining = mask;
+                
+                @Override
+                public boolean hasNext() {
+                    return remaining != 0;
+                }
+                
+                @Override
+                public String next() {
+                    if (remaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+                    int ordinal = Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return Vocabulary.CATEGORIES.name(ordinal);
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            return Long.bitCount(mask);
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            int ordinal = o instanceof String ? Vocabulary.CATEGORIES.find((String) o) : -1;
+            return ordinal >= 0 && (mask & 1L << ordinal) != 0;
+        }
+    }
+    
+    private static final class TagSet extends AbstractSet<String> {
+        private final int[] ids;
+        
+        TagSet(int[] ids) {
+            this.ids = ids;
+        }
+        
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                private int next;
+                
+                @Override
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+                
+                @Override
+                public String next() {
+                    if (next == ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return Vocabulary.TAGS.name(ids[next++]);
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            return ids.length;
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            int tagId = o instanceof String ? Vocabulary.TAGS.find((String) o) : -1;
+            return tagId >= 0 && Arrays.binarySearch(ids, tagId) >= 0;
+        }
     }
 }
@@ -0,0 +1,71 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names given small dense ids, shared by all profiles so that a profile holds numbers instead of
+ * strings: category ordinals index the bits of a mask, tag ids fill a sorted array. Ids are never
+ * reused, so a name keeps its id for the life of the process.
+ */
+public final class Vocabulary {
+    /** Category ordinals are bit positions of a {@code long}, which limits the categories to 64. */
+    public static final Vocabulary CATEGORIES = new Vocabulary("categories", Long.SIZE);
+    public static final Vocabulary TAGS = new Vocabulary("tags", Integer.MAX_VALUE);
+    /** User ids too long for the numeric form of {@link UserIds}. */
+    static final Vocabulary LONG_USER_IDS = new Vocabulary("long user ids", Integer.MAX_VALUE);
+    
+    private final String kind;
+    private final int capacity;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+    
+    private Vocabulary(String kind, int capacity) {
+        this.kind = kind;
+        this.capacity = capacity;
+    }
+    
+    /** The id of {@code name}, registering it first if it is new. */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            if (next >= capacity) {
+                throw new IllegalStateException("Cannot register more than " + capacity + " " + kind + ": " + name);
+            }
+            String[] current = names;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = name;
+            names = current;
+            size = next + 1;
+            // Published last, so whoever sees the id also sees its name.
+            ids.put(name, next);
+            return next;
+        }
+    }
+    
+    /** The id of {@code name}, or -1 if it was never registered. */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+    
+    public String name(int id) {
+        return names[id];
+    }
+    
+    public int size() {
+        return size;
+    }
+}
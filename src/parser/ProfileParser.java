@@ -1,33 +1,62 @@
 package parser;
 
+import model.Metric;
+import model.ProfileFeatures;
+import model.UserIds;
 import model.UserProfile;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ProfileParser {
     private static final Pattern UUID_PATTERN = Pattern.compile("# Final Profile \\(UUID\\): ([a-f0-9-]+)");
     private static final Pattern USER_ID_PATTERN = Pattern.compile("user_(\\d+)\\.md");
+    private static final Pattern FIELD_PATTERN = Pattern.compile(
+        "([A-Za-z_][A-Za-z0-9_]*)[\"']?:\\s*(?:[\"']([^\"']*)[\"']|([0-9]+)|(false))?");
+    private static final Pattern CATEGORY_SLUG_KEY = Pattern.compile("cat[123]_slug");
+    private static final String CONTACT_CHAT_KEY = "contact_chat_enabled";
     
     public UserProfile parse(Path filePath) throws IOException {
-        String content = Files.readString(filePath);
-        String fileName = filePath.getFileName().toString();
-        
-        String userId = extractUserId(fileName);
+        return parse(filePath, Files.readString(filePath));
+    }
+    
+    public UserProfile parse(Path filePath, String content) {
+        return parse(parseUserId(filePath), content);
+    }
+    
+    /** Parses the content of a user whose id is already known, e.g. from a bundle entry name. */
+    public UserProfile parse(String userId, String content) {
         String uuid = extractUuid(content);
+        ProfileFeatures features = extractFeatures(content);
         
-        return new UserProfile(userId, uuid, content);
+        return new UserProfile(userId, uuid, content, features);
+    }
+    
+    public String parseUserId(Path filePath) {
+        return parseUserId(filePath.getFileName().toString());
+    }
+    
+    /** The user id of a profile file name, or of an archive entry name such as {@code export/user_7.md}. */
+    public String parseUserId(String fileName) {
+        String userId = findUserId(fileName);
+        if (userId != null) {
+            return userId;
+        }
+        throw new IllegalArgumentException("Invalid filename format: " + fileName);
     }
     
-    private String extractUserId(String fileName) {
+    /** Like {@link #parseUserId(String)}, but null for a name that holds no valid user id. */
+    public static String findUserId(String fileName) {
         Matcher matcher = USER_ID_PATTERN.matcher(fileName);
-        if (matcher.find()) {
+        if (matcher.find() && UserIds.isValid("user_" + matcher.group(1))) {
             return "user_" + matcher.group(1);
         }
-        throw new IllegalArgumentException("Invalid filename format: " + fileName);
+        return null;
     }
     
     private String extractUuid(String content) {
@@ -37,4 +66,60 @@ public class ProfileParser {
         }
         return "unknown";
     }
+    
+    private ProfileFeatures extractFeatures(String content) {
+        String text = normalizeWhitespace(content);
+        long[] metrics = new long[Metric.values().length];
+        int presentMask = 0;
+        boolean contactChatDisabled = false;
+        List<String> categorySlugs = new ArrayList<>();
+        
+        Matcher matcher = FIELD_PATTERN.matcher(text);
+        while (matcher.find()) {
+            String key = matcher.group(1);
+            
+            if (matcher.group(3) != null) {
+                Metric metric = Metric.fromKey(key);
+                if (metric != null && (presentMask & (1 << metric.ordinal())) == 0) {
+                    metrics[metric.ordinal()] = parseMetric(matcher.group(3));
+                    presentMask |= 1 << metric.ordinal();
+                }
+            } else if (matcher.group(2) != null) {
+                if (CATEGORY_SLUG_KEY.matcher(key).matches()) {
+                    categorySlugs.add(matcher.group(2));
+                }
+            } else if (matcher.group(4) != null && key.equals(CONTACT_CHAT_KEY)) {
+                contactChatDisabled = true;
+            }
+        }
+        
+        return new ProfileFeatures(metrics, presentMask, contactChatDisabled,
+            categorySlugs.toArray(new String[0]), text);
+    }
+    
+    private long parseMetric(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+    
+    private String normalizeWhitespace(String content) {
+        StringBuilder text = new StringBuilder(content.length());
+        boolean inWhitespace = false;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                if (!inWhitespace) {
+                    text.append(' ');
+                    inWhitespace = true;
+                }
+            } else {
+                text.append(c);
+                inWhitespace = false;
+            }
+        }
+        return text.toString();
+    }
 }
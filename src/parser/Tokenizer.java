@@ -0,0 +1,92 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits profile text and search queries into normalized terms. Arabic code points that Persian
+ * text mixes in (ي ى ك ة and hamza forms of alef) are folded into their Persian letters, Persian and
+ * Arabic digits become ASCII, Latin letters are lower-cased, and diacritics, tatweel and zero-width
+ * joiners are dropped so that {@code می‌خواهم} and {@code میخواهم} are the same term.
+ */
+public final class Tokenizer {
+    private static final char ZWNJ = '\u200C';
+    private static final char ZWJ = '\u200D';
+    private static final char TATWEEL = '\u0640';
+    
+    private Tokenizer() {
+    }
+    
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isIgnorable(c)) {
+                continue;
+            }
+            char normalized = normalize(c);
+            if (Character.isLetterOrDigit(normalized)) {
+                token.append(normalized);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+    
+    /** Every distinct term of the text with the ascending token positions it occurs at. */
+    public static Map<String, int[]> positions(String text) {
+        List<String> tokens = tokenize(text);
+        Map<String, int[]> counts = new HashMap<>();
+        for (String token : tokens) {
+            counts.computeIfAbsent(token, t -> new int[1])[0]++;
+        }
+        Map<String, int[]> positions = new HashMap<>(counts.size() * 2);
+        for (int position = 0; position < tokens.size(); position++) {
+            int[] remaining = counts.get(tokens.get(position));
+            int[] occurrences = positions.computeIfAbsent(tokens.get(position), t -> new int[remaining[0]]);
+            occurrences[occurrences.length - remaining[0]--] = position;
+        }
+        return positions;
+    }
+    
+    private static boolean isIgnorable(char c) {
+        return c == ZWNJ || c == ZWJ || c == TATWEEL || c == '\u00AD'
+            || (c >= '\u064B' && c <= '\u065F') || c == '\u0670'; // soft hyphen, harakat, superscript alef
+    }
+    
+    private static char normalize(char c) {
+        switch (c) {
+            case '\u064A': // ي
+            case '\u0649': // ى
+                return '\u06CC'; // ی
+            case '\u0643': // ك
+                return '\u06A9'; // ک
+            case '\u0629': // ة
+            case '\u06C0': // ۀ
+                return '\u0647'; // ه
+            case '\u0623': // أ
+            case '\u0625': // إ
+            case '\u0671': // ٱ
+                return '\u0627'; // ا
+            case '\u0624': // ؤ
+                return '\u0648'; // و
+            default:
+                break;
+        }
+        if (c >= '\u06F0' && c <= '\u06F9') { // ۰-۹
+            return (char) ('0' + (c - '\u06F0'));
+        }
+        if (c >= '\u0660' && c <= '\u0669') { // ٠-٩
+            return (char) ('0' + (c - '\u0660'));
+        }
+        return Character.toLowerCase(c);
+    }
+}
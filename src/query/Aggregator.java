@@ -0,0 +1,175 @@
+package query;
+
+import model.Metric;
+import model.UserProfile;
+import model.Vocabulary;
+import store.DataStore;
+import store.MetricColumn;
+import store.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Whole-population aggregates computed in one pass over user ordinals. The range is split
+ * fork-join style; each worker thread adds into its own partial, and the partials are merged once
+ * the pass is done.
+ */
+public class Aggregator {
+    private static final int LEAF_SIZE = 4096;
+    
+    private final DataStore.Snapshot snapshot;
+    
+    public Aggregator(DataStore.Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    public int getUserCount() {
+        return snapshot.getUserCount();
+    }
+    
+    /** Users per category and tag, labelled as in {@link #overlap()}; read off the bitmaps, no pass. */
+    public Map<String, Integer> counts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String category : sorted(snapshot.getCategories())) {
+            counts.put(category, snapshot.getCategoryBitmap(category).getCardinality());
+        }
+        for (String tag : sorted(snapshot.getTags())) {
+            counts.put("tag:" + tag, snapshot.getTagBitmap(tag).getCardinality());
+        }
+        return counts;
+    }
+    
+    public int countUncategorized() {
+        RoaringBitmap categorized = new RoaringBitmap();
+        for (String category : snapshot.getCategories()) {
+            categorized = RoaringBitmap.or(categorized, snapshot.getCategoryBitmap(category));
+        }
+        return snapshot.getUserCount() - categorized.getCardinality();
+    }
+    
+    /** Co-occurrence of every category and tag; labels are sorted, categories first. */
+    public OverlapMatrix overlap() {
+        List<String> categories = sorted(snapshot.getCategories());
+        List<String> tags = sorted(snapshot.getTags());
+        // Labels by vocabulary id; sized after listing the names, so every listed name has a slot.
+        int[] categoryLabels = new int[Vocabulary.CATEGORIES.size()];
+        int[] tagLabels = new int[Vocabulary.TAGS.size()];
+        Arrays.fill(categoryLabels, -1);
+        Arrays.fill(tagLabels, -1);
+        List<String> labels = new ArrayList<>();
+        for (String category : categories) {
+            label(categoryLabels, Vocabulary.CATEGORIES.find(category), labels.size());
+            labels.add(category);
+        }
+        for (String tag : tags) {
+            label(tagLabels, Vocabulary.TAGS.find(tag), labels.size());
+            labels.add("tag:" + tag);
+        }
+        
+        List<OverlapMatrix> partials = pass(() -> new OverlapMatrix(labels), (matrix, from, to) -> {
+            int[] ids = new int[labels.size()];
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                UserProfile profile = snapshot.getUser(ordinal);
+                if (profile == null) {
+                    continue;
+                }
+                // Published profiles never change, so their masks and tag ids match this snapshot's bitmaps.
+                int count = 0;
+                for (long mask = profile.getCategoryMask(); mask != 0; mask &= mask - 1) {
+                    count = collect(Long.numberOfTrailingZeros(mask), categoryLabels, ids, count);
+                }
+                for (int tagId : profile.getTagIds()) {
+                    count = collect(tagId, tagLabels, ids, count);
+                }
+                matrix.add(ids, count);
+            }
+        });
+        OverlapMatrix total = new OverlapMatrix(labels);
+        partials.forEach(total::merge);
+        return total;
+    }
+    
+    public Histogram histogram(Metric metric) {
+        MetricColumn column = snapshot.getMetricColumn(metric);
+        List<Histogram> partials = pass(() -> new Histogram(metric), (histogram, from, to) -> {
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                if (column.has(ordinal)) {
+                    histogram.add(column.get(ordinal));
+                } else if (snapshot.getUser(ordinal) != null) {
+                    histogram.addMissing();
+                }
+            }
+        });
+        Histogram total = new Histogram(metric);
+        partials.forEach(total::merge);
+        return total;
+    }
+    
+    private static void label(int[] labels, int id, int label) {
+        if (id >= 0) {
+            labels[id] = label;
+        }
+    }
+    
+    private static int collect(int id, int[] labels, int[] target, int count) {
+        if (id < labels.length && labels[id] >= 0) {
+            target[count++] = labels[id];
+        }
+        return count;
+    }
+    
+    private static List<String> sorted(Iterable<String> names) {
+        List<String> list = new ArrayList<>();
+        names.forEach(list::add);
+        Collections.sort(list);
+        return list;
+    }
+    
+    private <T> List<T> pass(Supplier<T> newPartial, Leaf<T> leaf) {
+        Map<Thread, T> partials = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new Split<>(0, snapshot.getOrdinalCount(), partials, newPartial, leaf));
+        return new ArrayList<>(partials.values());
+    }
+    
+    private interface Leaf<T> {
+        void aggregate(T partial, int from, int to);
+    }
+    
+    /** ForkJoinTask is Serializable, but these tasks only ever run in this process. */
+    @SuppressWarnings("serial")
+    private static final class Split<T> extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final Map<Thread, T> partials;
+        private final Supplier<T> newPartial;
+        private final Leaf<T> leaf;
+        
+        Split(int from, int to, Map<Thread, T> partials, Supplier<T> newPartial, Leaf<T> leaf) {
+            this.from = from;
+            this.to = to;
+            this.partials = partials;
+            this.newPartial = newPartial;
+            this.leaf = leaf;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                leaf.aggregate(partials.computeIfAbsent(Thread.currentThread(), t -> newPartial.get()), from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split<>(from, middle, partials, newPartial, leaf),
+                new Split<>(middle, to, partials, newPartial, leaf));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class FindExpression {
+    
+    public static FindExpression parse(String input) {
+        Parser parser = new Parser(tokenize(input));
+        FindExpression expression = parser.parseOr();
+        if (parser.hasMore()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek() + "' in query");
+        }
+        return expression;
+    }
+    
+    private static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+                if (!Character.isWhitespace(c)) {
+                    tokens.add(String.valueOf(c));
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+    
+    public static class Operand extends FindExpression {
+        public enum Kind { CATEGORY_OR_TAG, CATEGORY, TAG }
+        
+        private final Kind kind;
+        private final String name;
+        
+        Operand(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+        
+        public Kind getKind() {
+            return kind;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        @Override
+        public String toString() {
+            switch (kind) {
+                case CATEGORY:
+                    return "category:" + name;
+                case TAG:
+                    return "tag:" + name;
+                default:
+                    return name;
+            }
+        }
+    }
+    
+    public static class Not extends FindExpression {
+        private final FindExpression operand;
+        
+        Not(FindExpression operand) {
+            this.operand = operand;
+        }
+        
+        public FindExpression getOperand() {
+            return operand;
+        }
+        
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+    
+    public static class And extends FindExpression {
+        private final List<FindExpression> operands;
+        
+        And(List<FindExpression> operands) {
+            this.operands = operands;
+        }
+        
+        public List<FindExpression> getOperands() {
+            return operands;
+        }
+        
+        @Override
+        public String toString() {
+            return join(operands, " AND ");
+        }
+    }
+    
+    public static class Or extends FindExpression {
+        private final List<FindExpression> operands;
+        
+        Or(List<FindExpression> operands) {
+            this.operands = operands;
+        }
+        
+        public List<FindExpression> getOperands() {
+            return operands;
+        }
+        
+        @Override
+        public String toString() {
+            return join(operands, " OR ");
+        }
+    }
+    
+    private static String join(List<FindExpression> operands, String separator) {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                text.append(separator);
+            }
+            text.append(operands.get(i));
+        }
+        return text.append(")").toString();
+    }
+    
+    private static class Parser {
+        private final List<String> tokens;
+        private int position;
+        
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+            this.position = 0;
+        }
+        
+        boolean hasMore() {
+            return position < tokens.size();
+        }
+        
+        String peek() {
+            return tokens.get(position);
+        }
+        
+        private boolean accept(String keyword) {
+            if (hasMore() && peek().equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        FindExpression parseOr() {
+            List<FindExpression> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (accept("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+        
+        private FindExpression parseAnd() {
+            List<FindExpression> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (accept("AND")) {
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+        
+        private FindExpression parseUnary() {
+            if (!hasMore()) {
+                throw new IllegalArgumentException("Unexpected end of query");
+            }
+            if (accept("NOT")) {
+                return new Not(parseUnary());
+            }
+            if (accept("(")) {
+                FindExpression inner = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in query");
+                }
+                return inner;
+            }
+            
+            String token = tokens.get(position++);
+            if (token.equals(")") || token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                throw new IllegalArgumentException("Unexpected '" + token + "' in query");
+            }
+            if (token.startsWith("tag:")) {
+                return new Operand(Operand.Kind.TAG, requireName(token, 4));
+            }
+            if (token.startsWith("category:")) {
+                return new Operand(Operand.Kind.CATEGORY, requireName(token, 9));
+            }
+            return new Operand(Operand.Kind.CATEGORY_OR_TAG, token);
+        }
+        
+        private String requireName(String token, int prefixLength) {
+            String name = token.substring(prefixLength);
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Missing name after '" + token + "'");
+            }
+            return name;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A FIND command: the boolean expression, an optional {@code WHERE [category.]score <op> n [AND ...]}
+ * filter, and the trailing output clauses {@code COUNT}, {@code LIMIT n}, {@code OFFSET m} and
+ * {@code AFTER <userId>}.
+ */
+public class FindRequest {
+    private final String query;
+    private final String expression;
+    private final boolean countOnly;
+    private final int limit;
+    private final int offset;
+    private final String after;
+    private final boolean scoreFiltered;
+    private final String scoreCategory;
+    private final int minScore;
+    private final int maxScore;
+    
+    private FindRequest(String query, String expression, boolean countOnly, int limit, int offset, String after,
+                        boolean scoreFiltered, String scoreCategory, int minScore, int maxScore) {
+        this.query = query;
+        this.expression = expression;
+        this.countOnly = countOnly;
+        this.limit = limit;
+        this.offset = offset;
+        this.after = after;
+        this.scoreFiltered = scoreFiltered;
+        this.scoreCategory = scoreCategory;
+        this.minScore = minScore;
+        this.maxScore = maxScore;
+    }
+    
+    public static FindRequest parse(String input) {
+        List<String> tokens = new ArrayList<>(Arrays.asList(input.trim().split("\\s+")));
+        boolean countOnly = false;
+        int limit = -1;
+        int offset = 0;
+        String after = null;
+        
+        boolean consumed = true;
+        while (consumed && tokens.size() > 1) {
+            consumed = false;
+            String last = tokens.get(tokens.size() - 1);
+            String keyword = tokens.get(tokens.size() - 2);
+            if (last.equalsIgnoreCase("COUNT")) {
+                countOnly = true;
+                tokens.remove(tokens.size() - 1);
+                consumed = true;
+            } else if (tokens.size() > 2 && keyword.equalsIgnoreCase("LIMIT")) {
+                limit = parseCount("LIMIT", last);
+                consumed = true;
+            } else if (tokens.size() > 2 && keyword.equalsIgnoreCase("OFFSET")) {
+                offset = parseCount("OFFSET", last);
+                consumed = true;
+            } else if (tokens.size() > 2 && keyword.equalsIgnoreCase("AFTER")) {
+                after = last;
+                consumed = true;
+            }
+            if (consumed && !last.equalsIgnoreCase("COUNT")) {
+                tokens.remove(tokens.size() - 1);
+                tokens.remove(tokens.size() - 1);
+            }
+        }
+        
+        int where = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.get(i).equalsIgnoreCase("WHERE")) {
+                where = i;
+                break;
+            }
+        }
+        if (where < 0) {
+            return new FindRequest(String.join(" ", tokens), String.join(" ", tokens), countOnly, limit, offset, after,
+                false, null, 0, Integer.MAX_VALUE);
+        }
+        
+        List<String> condition = tokens.subList(where + 1, tokens.size());
+        String scoreCategory = null;
+        int minScore = 0;
+        int maxScore = Integer.MAX_VALUE;
+        for (int i = 0; i < condition.size(); i += 4) {
+            if (i > 0 && !condition.get(i - 1).equalsIgnoreCase("AND")) {
+                throw new IllegalArgumentException("Expected AND between score conditions, got '" + condition.get(i - 1) + "'");
+            }
+            if (i + 3 > condition.size()) {
+                throw new IllegalArgumentException("Expected 'WHERE [category.]score <op> <n>'");
+            }
+            String field = condition.get(i);
+            String category = null;
+            if (field.toLowerCase().endsWith(".score")) {
+                category = field.substring(0, field.length() - ".score".length());
+            } else if (!field.equalsIgnoreCase("score")) {
+                throw new IllegalArgumentException("Only score can be filtered with WHERE, got '" + field + "'");
+            }
+            if (scoreCategory != null && category != null && !category.equals(scoreCategory)) {
+                throw new IllegalArgumentException("All WHERE conditions must use the same category's score");
+            }
+            scoreCategory = category != null ? category : scoreCategory;
+            
+            int bound = parseCount("score", condition.get(i + 2));
+            switch (condition.get(i + 1)) {
+                case ">=":
+                    minScore = Math.max(minScore, bound);
+                    break;
+                case ">":
+                    if (bound == Integer.MAX_VALUE) {
+                        // No score is above it; an empty range instead of overflowing bound + 1.
+                        maxScore = -1;
+                    } else {
+                        minScore = Math.max(minScore, bound + 1);
+                    }
+                    break;
+                case "<=":
+                    maxScore = Math.min(maxScore, bound);
+                    break;
+                case "<":
+                    maxScore = Math.min(maxScore, bound - 1);
+                    break;
+                case "=":
+                case "==":
+                    minScore = Math.max(minScore, bound);
+                    maxScore = Math.min(maxScore, bound);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown comparison '" + condition.get(i + 1) + "'");
+            }
+        }
+        if (condition.isEmpty() || condition.size() % 4 != 3) {
+            throw new IllegalArgumentException("Expected 'WHERE [category.]score <op> <n>'");
+        }
+        return new FindRequest(String.join(" ", tokens), String.join(" ", tokens.subList(0, where)), countOnly, limit, offset, after,
+            true, scoreCategory, minScore, maxScore);
+    }
+    
+    private static int parseCount(String keyword, String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(keyword + " needs a non-negative number, got '" + value + "'");
+    }
+    
+    /** The expression and WHERE clause, without the output clauses. */
+    public String getQuery() {
+        return query;
+    }
+    
+    public String getExpression() {
+        return expression;
+    }
+    
+    public boolean isCountOnly() {
+        return countOnly;
+    }
+    
+    public boolean isPaged() {
+        return limit >= 0 || offset > 0 || after != null;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public int getOffset() {
+        return offset;
+    }
+    
+    public String getAfter() {
+        return after;
+    }
+    
+    public boolean isScoreFiltered() {
+        return scoreFiltered;
+    }
+    
+    /** The category named in {@code WHERE <category>.score}, or null to use the one in the expression. */
+    public String getScoreCategory() {
+        return scoreCategory;
+    }
+    
+    public int getMinScore() {
+        return minScore;
+    }
+    
+    public int getMaxScore() {
+        return maxScore;
+    }
+}
@@ -0,0 +1,45 @@
+package query;
+
+import java.util.List;
+
+public class FindResult {
+    private final int total;
+    private final int firstPosition;
+    private final List<String> userIds;
+    private final boolean hasMore;
+    private final int userCount;
+    
+    public FindResult(int total, int firstPosition, List<String> userIds, boolean hasMore, int userCount) {
+        this.total = total;
+        this.firstPosition = firstPosition;
+        this.userIds = userIds;
+        this.hasMore = hasMore;
+        this.userCount = userCount;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    /** Zero-based position of the first returned user among all matches in id order. */
+    public int getFirstPosition() {
+        return firstPosition;
+    }
+    
+    public List<String> getUserIds() {
+        return userIds;
+    }
+    
+    public boolean hasMore() {
+        return hasMore;
+    }
+    
+    /** Number of users in the snapshot the query ran against. */
+    public int getUserCount() {
+        return userCount;
+    }
+    
+    public String getNextCursor() {
+        return hasMore && !userIds.isEmpty() ? userIds.get(userIds.size() - 1) : null;
+    }
+}
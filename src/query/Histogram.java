@@ -0,0 +1,96 @@
+package query;
+
+import model.Metric;
+
+/**
+ * Distribution of one metric in power-of-two buckets: bucket 0 holds 0, bucket {@code k} holds
+ * {@code 2^(k-1)} to {@code 2^k - 1}. Metric values are never negative.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+    
+    private final Metric metric;
+    private final long[] counts = new long[BUCKETS];
+    private long users;
+    private long missing;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+    
+    Histogram(Metric metric) {
+        this.metric = metric;
+    }
+    
+    void add(long value) {
+        counts[bucketOf(value)]++;
+        users++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+    }
+    
+    void addMissing() {
+        missing++;
+    }
+    
+    void merge(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        users += other.users;
+        missing += other.missing;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+    
+    private static int bucketOf(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+    
+    public Metric getMetric() {
+        return metric;
+    }
+    
+    public int getFirstBucket() {
+        return users > 0 ? bucketOf(min) : 0;
+    }
+    
+    /** The last non-empty bucket, or -1 when no user has the metric. */
+    public int getLastBucket() {
+        return users > 0 ? bucketOf(max) : -1;
+    }
+    
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+    
+    public static long getLowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+    
+    public static long getUpperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+    
+    /** Users that have the metric. */
+    public long getUsers() {
+        return users;
+    }
+    
+    public long getMissing() {
+        return missing;
+    }
+    
+    public long getMin() {
+        return min;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public double getMean() {
+        return users > 0 ? sum / users : 0.0;
+    }
+}
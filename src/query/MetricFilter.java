@@ -0,0 +1,104 @@
+package query;
+
+import model.Metric;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A FILTER command's conditions, {@code <metric> <op> <n> [AND ...]}, with the conditions on each
+ * metric folded into one inclusive range. Users without the metric never match.
+ */
+public class MetricFilter {
+    private final Map<Metric, long[]> ranges;
+    
+    private MetricFilter(Map<Metric, long[]> ranges) {
+        this.ranges = ranges;
+    }
+    
+    public static MetricFilter parse(String input) {
+        List<String> tokens = Arrays.asList(input.trim().split("\\s+"));
+        Map<Metric, long[]> ranges = new EnumMap<>(Metric.class);
+        if (tokens.size() % 4 != 3) {
+            throw new IllegalArgumentException("Expected '<metric> <op> <n> [AND <metric> <op> <n> ...]'");
+        }
+        for (int i = 0; i < tokens.size(); i += 4) {
+            if (i > 0 && !tokens.get(i - 1).equalsIgnoreCase("AND")) {
+                throw new IllegalArgumentException("Expected AND between conditions, got '" + tokens.get(i - 1) + "'");
+            }
+            Metric metric = Metric.fromKey(tokens.get(i));
+            if (metric == null) {
+                throw new IllegalArgumentException("Unknown metric '" + tokens.get(i) + "'");
+            }
+            long bound = parseBound(tokens.get(i + 2));
+            long[] range = ranges.computeIfAbsent(metric, m -> new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+            switch (tokens.get(i + 1)) {
+                case ">=":
+                    range[0] = Math.max(range[0], bound);
+                    break;
+                case ">":
+                    if (bound == Long.MAX_VALUE) {
+                        range[1] = Long.MIN_VALUE;
+                    } else {
+                        range[0] = Math.max(range[0], bound + 1);
+                    }
+                    break;
+                case "<=":
+                    range[1] = Math.min(range[1], bound);
+                    break;
+                case "<":
+                    if (bound == Long.MIN_VALUE) {
+                        range[0] = Long.MAX_VALUE;
+                    } else {
+                        range[1] = Math.min(range[1], bound - 1);
+                    }
+                    break;
+                case "=":
+                case "==":
+                    range[0] = Math.max(range[0], bound);
+                    range[1] = Math.min(range[1], bound);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown comparison '" + tokens.get(i + 1) + "'");
+            }
+        }
+        return new MetricFilter(ranges);
+    }
+    
+    private static long parseBound(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("FILTER needs a whole number, got '" + value + "'");
+        }
+    }
+    
+    public Set<Metric> getMetrics() {
+        return Collections.unmodifiableSet(ranges.keySet());
+    }
+    
+    public long getMin(Metric metric) {
+        return ranges.get(metric)[0];
+    }
+    
+    public long getMax(Metric metric) {
+        return ranges.get(metric)[1];
+    }
+    
+    /** Conditions in metric order with their folded ranges, the same for every equivalent filter. */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        ranges.forEach((metric, range) -> {
+            if (text.length() > 0) {
+                text.append(" AND ");
+            }
+            text.append(metric.getKey()).append(' ').append(range[0]).append("..").append(range[1]);
+        });
+        return text.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How many users carry each pair of labels, a label being a category or a {@code tag:}-prefixed
+ * tag. The diagonal holds each label's own user count.
+ */
+public class OverlapMatrix {
+    private final List<String> labels;
+    private final long[][] counts;
+    
+    OverlapMatrix(List<String> labels) {
+        this.labels = labels;
+        this.counts = new long[labels.size()][labels.size()];
+    }
+    
+    /** Counts one user carrying the labels {@code ids[0..count)}. */
+    void add(int[] ids, int count) {
+        for (int i = 0; i < count; i++) {
+            long[] row = counts[ids[i]];
+            for (int j = 0; j < count; j++) {
+                row[ids[j]]++;
+            }
+        }
+    }
+    
+    void merge(OverlapMatrix other) {
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts.length; j++) {
+                counts[i][j] += other.counts[i][j];
+            }
+        }
+    }
+    
+    public List<String> getLabels() {
+        return Collections.unmodifiableList(labels);
+    }
+    
+    public long getCount(int row, int column) {
+        return counts[row][column];
+    }
+}
@@ -0,0 +1,169 @@
+package query;
+
+import model.Metric;
+import store.DataStore;
+import store.PostingList;
+import store.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class QueryPlanner {
+    private final DataStore.Snapshot snapshot;
+    
+    public QueryPlanner(DataStore.Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+    
+    public RoaringBitmap execute(FindExpression expression) {
+        return evaluate(expression);
+    }
+    
+    /**
+     * Intersects the postings of every term, rarest first, then keeps only the users in which each
+     * multi-term phrase occurs at consecutive positions.
+     */
+    public RoaringBitmap search(SearchQuery query) {
+        List<PostingList> postings = new ArrayList<>();
+        for (String term : query.getTerms()) {
+            postings.add(snapshot.getPostings(term));
+        }
+        postings.sort(Comparator.comparingInt(p -> p.getUsers().getCardinality()));
+        
+        RoaringBitmap result = postings.get(0).getUsers();
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.and(result, postings.get(i).getUsers());
+        }
+        for (List<String> phrase : query.getPhrases()) {
+            if (phrase.size() > 1 && !result.isEmpty()) {
+                result = matchPhrase(result, phrase);
+            }
+        }
+        return result;
+    }
+    
+    private RoaringBitmap matchPhrase(RoaringBitmap candidates, List<String> phrase) {
+        PostingList.Cursor[] cursors = new PostingList.Cursor[phrase.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = snapshot.getPostings(phrase.get(i)).cursor();
+        }
+        RoaringBitmap matched = new RoaringBitmap();
+        int[][] positions = new int[cursors.length][];
+        candidates.forEach(ordinal -> {
+            for (int i = 0; i < cursors.length; i++) {
+                positions[i] = cursors[i].positions(ordinal);
+            }
+            if (containsPhrase(positions)) {
+                matched.add(ordinal);
+            }
+        });
+        return matched;
+    }
+    
+    private static boolean containsPhrase(int[][] positions) {
+        for (int start : positions[0]) {
+            int term = 1;
+            while (term < positions.length && Arrays.binarySearch(positions[term], start + term) >= 0) {
+                term++;
+            }
+            if (term == positions.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /** Scans the metric columns one after another, each only over the users still matching. */
+    public RoaringBitmap filter(MetricFilter filter) {
+        long[] matches = new long[(snapshot.getOrdinalCount() + 63) >>> 6];
+        Arrays.fill(matches, -1L);
+        for (Metric metric : filter.getMetrics()) {
+            snapshot.getMetricColumn(metric).retainRange(matches, filter.getMin(metric), filter.getMax(metric));
+        }
+        return RoaringBitmap.fromWords(matches);
+    }
+    
+    private RoaringBitmap evaluate(FindExpression expression) {
+        if (expression instanceof FindExpression.Operand) {
+            return resolve((FindExpression.Operand) expression);
+        }
+        if (expression instanceof FindExpression.Not) {
+            return RoaringBitmap.andNot(snapshot.getAllUsers(), evaluate(((FindExpression.Not) expression).getOperand()));
+        }
+        if (expression instanceof FindExpression.And) {
+            return evaluateAnd((FindExpression.And) expression);
+        }
+        return evaluateOr((FindExpression.Or) expression);
+    }
+    
+    private RoaringBitmap evaluateAnd(FindExpression.And and) {
+        List<FindExpression> included = new ArrayList<>();
+        List<FindExpression> excluded = new ArrayList<>();
+        for (FindExpression operand : and.getOperands()) {
+            if (operand instanceof FindExpression.Not) {
+                excluded.add(((FindExpression.Not) operand).getOperand());
+            } else {
+                included.add(operand);
+            }
+        }
+        included.sort(Comparator.comparingInt(this::estimate));
+        excluded.sort(Comparator.comparingInt(this::estimate).reversed());
+        
+        RoaringBitmap result = included.isEmpty() ? snapshot.getAllUsers() : evaluate(included.get(0));
+        for (int i = 1; i < included.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.and(result, evaluate(included.get(i)));
+        }
+        for (int i = 0; i < excluded.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.andNot(result, evaluate(excluded.get(i)));
+        }
+        return result;
+    }
+    
+    private RoaringBitmap evaluateOr(FindExpression.Or or) {
+        int totalUsers = snapshot.getUserCount();
+        RoaringBitmap result = new RoaringBitmap();
+        for (FindExpression operand : or.getOperands()) {
+            result = RoaringBitmap.or(result, evaluate(operand));
+            if (result.getCardinality() >= totalUsers) {
+                break;
+            }
+        }
+        return result;
+    }
+    
+    private int estimate(FindExpression expression) {
+        int totalUsers = snapshot.getUserCount();
+        if (expression instanceof FindExpression.Operand) {
+            return resolve((FindExpression.Operand) expression).getCardinality();
+        }
+        if (expression instanceof FindExpression.Not) {
+            return totalUsers - estimate(((FindExpression.Not) expression).getOperand());
+        }
+        if (expression instanceof FindExpression.And) {
+            int smallest = totalUsers;
+            for (FindExpression operand : ((FindExpression.And) expression).getOperands()) {
+                smallest = Math.min(smallest, estimate(operand));
+            }
+            return smallest;
+        }
+        long sum = 0;
+        for (FindExpression operand : ((FindExpression.Or) expression).getOperands()) {
+            sum += estimate(operand);
+        }
+        return (int) Math.min(totalUsers, sum);
+    }
+    
+    private RoaringBitmap resolve(FindExpression.Operand operand) {
+        switch (operand.getKind()) {
+            case CATEGORY:
+                return snapshot.getCategoryBitmap(operand.getName());
+            case TAG:
+                return snapshot.getTagBitmap(operand.getName());
+            default:
+                RoaringBitmap users = snapshot.getCategoryBitmap(operand.getName());
+                return users.isEmpty() ? snapshot.getTagBitmap(operand.getName()) : users;
+        }
+    }
+}
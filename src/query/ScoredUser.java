@@ -0,0 +1,19 @@
+package query;
+
+public class ScoredUser {
+    private final String userId;
+    private final int score;
+    
+    public ScoredUser(String userId, int score) {
+        this.userId = userId;
+        this.score = score;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,73 @@
+package query;
+
+import parser.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A SEARCH command: words and {@code "quoted phrases"} that must all occur in a profile's text. A
+ * phrase matches only when its terms appear consecutively; an unquoted word the tokenizer splits in
+ * two (such as {@code pre-payment}) is treated as a phrase too.
+ */
+public class SearchQuery {
+    private final List<List<String>> phrases;
+    
+    private SearchQuery(List<List<String>> phrases) {
+        this.phrases = phrases;
+    }
+    
+    public static SearchQuery parse(String input) {
+        List<List<String>> phrases = new ArrayList<>();
+        boolean quoted = false;
+        for (String part : input.split("\"", -1)) {
+            if (quoted) {
+                addPhrase(phrases, part);
+            } else {
+                for (String word : part.trim().split("\\s+")) {
+                    addPhrase(phrases, word);
+                }
+            }
+            quoted = !quoted;
+        }
+        if (!quoted) {
+            throw new IllegalArgumentException("Unterminated phrase in SEARCH: " + input);
+        }
+        if (phrases.isEmpty()) {
+            throw new IllegalArgumentException("SEARCH needs at least one word");
+        }
+        return new SearchQuery(phrases);
+    }
+    
+    private static void addPhrase(List<List<String>> phrases, String text) {
+        List<String> terms = Tokenizer.tokenize(text);
+        if (!terms.isEmpty()) {
+            phrases.add(Collections.unmodifiableList(terms));
+        }
+    }
+    
+    /** Every phrase; a single word is a phrase of one term. */
+    public List<List<String>> getPhrases() {
+        return Collections.unmodifiableList(phrases);
+    }
+    
+    public Set<String> getTerms() {
+        Set<String> terms = new LinkedHashSet<>();
+        phrases.forEach(terms::addAll);
+        return terms;
+    }
+    
+    /** The normalized phrases, sorted and each quoted, the same for every equivalent query. */
+    @Override
+    public String toString() {
+        Set<String> quoted = new TreeSet<>();
+        for (List<String> phrase : phrases) {
+            quoted.add('"' + String.join(" ", phrase) + '"');
+        }
+        return String.join(" ", quoted);
+    }
+}
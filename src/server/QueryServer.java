@@ -0,0 +1,350 @@
+package server;
+
+import cli.CommandParser;
+import cli.QueryExecutor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import engine.QueryEngine;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+/**
+ * Serves commands over a TCP line protocol and HTTP, both on loopback only. Clients may run
+ * {@link #CLIENT_COMMANDS}; over HTTP, tag changes need a POST, and requests must name the server
+ * by a loopback Host and come from a loopback Origin, so a web page cannot drive it from a
+ * browser. A shard coordinator that opens a line connection with {@code AUTH <token>} (the token
+ * it put in {@link #COORDINATOR_TOKEN_VARIABLE}) may run every command and is answered in the
+ * {@link cli.ReplyPrinter} format.
+ */
+public class QueryServer {
+    /** Environment variable that hands a shard worker the token its coordinator authenticates with. */
+    public static final String COORDINATOR_TOKEN_VARIABLE = "QUERY_ENGINE_COORDINATOR_TOKEN";
+    /** Commands network clients may run; SAVE_SNAPSHOT and RELOAD_RULES take server-side paths. */
+    public static final Set<CommandParser.CommandType> CLIENT_COMMANDS = EnumSet.of(
+        CommandParser.CommandType.FIND, CommandParser.CommandType.ADD_TAG,
+        CommandParser.CommandType.REMOVE_TAG, CommandParser.CommandType.GET_USER_PROFILE);
+    
+    private static final Set<CommandParser.CommandType> MUTATIONS = EnumSet.of(
+        CommandParser.CommandType.ADD_TAG, CommandParser.CommandType.REMOVE_TAG);
+    private static final String AUTH_PREFIX = "AUTH ";
+    private static final Pattern HTTP_REQUEST_LINE = Pattern.compile("^[A-Z]+ \\S+ HTTP/\\d(\\.\\d)?$");
+    private static final Pattern IPV4_LITERAL = Pattern.compile("^\\d{1,3}(\\.\\d{1,3}){3}$");
+    private static final Pattern IPV6_LITERAL = Pattern.compile("^[0-9a-fA-F:.]*:[0-9a-fA-F:.]*$");
+    private static final int BACKLOG = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final String BUSY_MESSAGE = "   ✗ ERROR: Server busy, try again later\n";
+    private static final String FORBIDDEN_MESSAGE = "   ✗ ERROR: Only loopback hosts and origins are served\n";
+    
+    private final QueryEngine engine;
+    private final CommandParser parser;
+    private final int tcpPort;
+    private final int httpPort;
+    private final byte[] coordinatorToken;
+    private final Semaphore connections;
+    private final Semaphore runningCommands;
+    private final ExecutorService connectionExecutor;
+    private ServerSocket tcpSocket;
+    private HttpServer httpServer;
+    private volatile boolean running;
+    
+    /** @param coordinatorToken the token a shard coordinator authenticates with, or null to allow none */
+    public QueryServer(QueryEngine engine, int tcpPort, int httpPort, int maxConnections, int maxConcurrentCommands,
+                       String coordinatorToken) {
+        this.engine = engine;
+        this.parser = new CommandParser();
+        this.tcpPort = tcpPort;
+        this.httpPort = httpPort;
+        this.coordinatorToken = coordinatorToken != null && !coordinatorToken.isEmpty()
+            ? coordinatorToken.getBytes(StandardCharsets.UTF_8) : null;
+        this.connections = new Semaphore(maxConnections);
+        this.runningCommands = new Semaphore(maxConcurrentCommands, true);
+        this.connectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+    
+    public void start() throws IOException {
+        running = true;
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        
+        if (tcpPort >= 0) {
+            tcpSocket = new ServerSocket(tcpPort, BACKLOG, loopback);
+            Thread acceptor = new Thread(this::acceptConnections, "query-server-accept");
+            acceptor.start();
+        }
+        
+        if (httpPort >= 0) {
+            httpServer = HttpServer.create(new InetSocketAddress(loopback, httpPort), BACKLOG);
+            httpServer.createContext("/query", this::handleHttp);
+            httpServer.setExecutor(connectionExecutor);
+            httpServer.start();
+        }
+    }
+    
+    public void stop() {
+        running = false;
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (tcpSocket != null) {
+            try {
+                tcpSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        connectionExecutor.shutdownNow();
+    }
+    
+    public int getTcpPort() {
+        return tcpSocket != null ? tcpSocket.getLocalPort() : -1;
+    }
+    
+    public int getHttpPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : -1;
+    }
+    
+    private void acceptConnections() {
+        while (running) {
+            Socket socket;
+            try {
+                socket = tcpSocket.accept();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("   ⚠ Warning: Accept failed: " + e.getMessage());
+                }
+                continue;
+            }
+            
+            if (!connections.tryAcquire()) {
+                rejectBusy(socket);
+                continue;
+            }
+            connectionExecutor.execute(() -> {
+                try {
+                    serveConnection(socket);
+                } finally {
+                    connections.release();
+                }
+            });
+        }
+    }
+    
+    private void serveConnection(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(
+                 new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE), false, StandardCharsets.UTF_8)) {
+            QueryExecutor executor = new QueryExecutor(engine, out);
+            boolean first = true;
+            boolean coordinator = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equalsIgnoreCase("exit") || line.equalsIgnoreCase("quit")) {
+                    break;
+                }
+                if (first) {
+                    first = false;
+                    // A browser can reach this port too, but only by speaking HTTP; it gets no answer.
+                    if (HTTP_REQUEST_LINE.matcher(line).matches()) {
+                        break;
+                    }
+                    if (line.startsWith(AUTH_PREFIX)) {
+                        coordinator = isCoordinatorToken(line.substring(AUTH_PREFIX.length()));
+                        if (!coordinator) {
+                            executor.reject("Invalid coordinator token");
+                            break;
+                        }
+                        executor.useReplyFormat();
+                        executor.acknowledge("Authenticated as shard coordinator");
+                        out.flush();
+                        continue;
+                    }
+                }
+                
+                runCommand(executor, line, coordinator, true);
+                
+                // Pipelined requests already in the socket buffer are answered in one write.
+                if (!reader.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away; nothing to answer.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void handleHttp(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!connections.tryAcquire()) {
+                respond(exchange, 503, BUSY_MESSAGE.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            try {
+                if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))
+                        || !isLoopbackOrigin(exchange.getRequestHeaders().getFirst("Origin"))) {
+                    respond(exchange, 403, FORBIDDEN_MESSAGE.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                String commands;
+                if (exchange.getRequestMethod().equals("GET")) {
+                    commands = queryParameter(exchange.getRequestURI().getRawQuery(), "q");
+                } else if (exchange.getRequestMethod().equals("POST")) {
+                    commands = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                } else {
+                    respond(exchange, 405, new byte[0]);
+                    return;
+                }
+                if (commands == null || commands.isBlank()) {
+                    respond(exchange, 400, "   ✗ ERROR: Missing query\n".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(body, false, StandardCharsets.UTF_8);
+                QueryExecutor executor = new QueryExecutor(engine, out);
+                boolean post = exchange.getRequestMethod().equals("POST");
+                for (String line : commands.split("\n")) {
+                    if (!line.isBlank()) {
+                        runCommand(executor, line.trim(), false, post);
+                    }
+                }
+                out.flush();
+                respond(exchange, 200, body.toByteArray());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, BUSY_MESSAGE.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                connections.release();
+            }
+        }
+    }
+    
+    private void runCommand(QueryExecutor executor, String line, boolean coordinator, boolean mutationsAllowed)
+            throws InterruptedException {
+        CommandParser.ParsedCommand command = parser.parse(line);
+        CommandParser.CommandType type = command.getType();
+        if (!coordinator && type != CommandParser.CommandType.INVALID) {
+            if (!CLIENT_COMMANDS.contains(type)) {
+                executor.reject(type + " is not available over the network");
+                return;
+            }
+            if (MUTATIONS.contains(type) && !mutationsAllowed) {
+                executor.reject(type + " needs a POST request");
+                return;
+            }
+        }
+        runningCommands.acquire();
+        try {
+            executor.execute(command);
+        } finally {
+            runningCommands.release();
+        }
+    }
+    
+    private boolean isCoordinatorToken(String token) {
+        return coordinatorToken != null
+            && MessageDigest.isEqual(coordinatorToken, token.trim().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Whether a Host header names this machine as "localhost" or a loopback address literal. Any
+     * other name is refused even if it resolves to loopback now, since DNS rebinding can make it do so.
+     */
+    static boolean isLoopbackHost(String host) {
+        if (host == null) {
+            return false;
+        }
+        String name = host.trim();
+        if (name.startsWith("[")) {
+            int end = name.indexOf(']');
+            if (end < 0) {
+                return false;
+            }
+            name = name.substring(1, end);
+        } else if (name.indexOf(':') >= 0) {
+            name = name.substring(0, name.indexOf(':'));
+        }
+        if (name.equalsIgnoreCase("localhost")) {
+            return true;
+        }
+        // Only literals, so the check below never goes to DNS.
+        if (!IPV4_LITERAL.matcher(name).matches() && !IPV6_LITERAL.matcher(name).matches()) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(name).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+    
+    /** Requests without an Origin are not from a web page; a page's origin must be loopback too. */
+    static boolean isLoopbackOrigin(String origin) {
+        if (origin == null) {
+            return true;
+        }
+        try {
+            URI uri = new URI(origin.trim());
+            return uri.getHost() != null && isLoopbackHost(uri.getHost());
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+    
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+    
+    private static String queryParameter(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && pair.substring(0, separator).equals(name)) {
+                return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+    
+    private static void rejectBusy(Socket socket) {
+        try (socket) {
+            socket.getOutputStream().write(BUSY_MESSAGE.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package shard;
+
+import config.Config;
+import model.UserIds;
+import parser.ProfileParser;
+
+/**
+ * Which shard a user belongs to: the numeric user id, hashed, modulo the shard count. Workers use
+ * it to pick the profiles they load and the coordinator to route per-user commands, so both must
+ * run the same code.
+ */
+public final class Partition {
+    private Partition() {
+    }
+    
+    public static int of(long id, int shards) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (mixed ^ mixed >>> 32), shards);
+    }
+    
+    /** The shard of {@code userId}, or -1 if it is not a valid user id. */
+    public static int of(String userId, int shards) {
+        if (!UserIds.isValid(userId)) {
+            return -1;
+        }
+        // Long ids are numbered per process, so they are placed by their text instead.
+        long id = UserIds.tryParse(userId);
+        return id >= 0 ? of(id, shards) : of(userId.hashCode(), shards);
+    }
+    
+    /**
+     * Whether this process loads the profile file or bundle entry {@code name}, going by
+     * {@link Config#getShardIndex()}. Names without a user id go to shard 0, which reports them.
+     */
+    public static boolean owns(String name) {
+        if (Config.getShardCount() == 1) {
+            return true;
+        }
+        String userId = ProfileParser.findUserId(name);
+        int shard = userId != null ? of(userId, Config.getShardCount()) : 0;
+        return shard == Config.getShardIndex();
+    }
+}
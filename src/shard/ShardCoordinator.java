@@ -0,0 +1,342 @@
+package shard;
+
+import cli.ReplyPrinter;
+import config.Config;
+import query.FindRequest;
+import query.FindResult;
+import query.ScoredUser;
+import store.UserIdOrder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the engine as N worker processes on this machine, each loading only the users
+ * {@link Partition} assigns to it, and answers commands by scatter-gather: a query goes to every
+ * worker in parallel and their replies are merged, while a command about one user goes to the
+ * worker that owns it. A worker that does not answer within {@link Config#getShardTimeoutMillis()}
+ * is left out of the result with a warning instead of holding it up.
+ */
+public class ShardCoordinator implements Closeable {
+    /** What a worker prints on stdout once it serves: this, its line protocol port and its profile count. */
+    public static final String WORKER_READY = "SHARD_READY";
+    
+    private static final String MAIN_CLASS = "Main";
+    private static final String TAG_PREFIX = "tag:";
+    private static final String TAG_LOG_FAILED = "Tag log write failed";
+    
+    private final List<ShardWorker> workers;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    
+    private ShardCoordinator(List<ShardWorker> workers) {
+        this.workers = workers;
+    }
+    
+    /**
+     * Starts {@code shards} workers with this JVM and class path, each given
+     * {@code --shard i/N --tcp-port 0} and then {@code arguments.apply(i)}, and waits until all
+     * have loaded their profiles. A random token in their environment lets only this coordinator
+     * run commands beyond the client ones on their ports.
+     */
+    public static ShardCoordinator start(int shards, IntFunction<List<String>> arguments) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        String token = HexFormat.of().formatHex(secret);
+        List<ShardWorker> workers = new ArrayList<>();
+        ShardCoordinator coordinator = new ShardCoordinator(workers);
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                    MAIN_CLASS, "--shard", shard + "/" + shards, "--tcp-port", "0"));
+                command.addAll(arguments.apply(shard));
+                workers.add(ShardWorker.start(shard, command, token));
+            }
+            for (ShardWorker worker : workers) {
+                worker.awaitReady();
+            }
+            return coordinator;
+        } catch (IOException e) {
+            coordinator.close();
+            throw e;
+        }
+    }
+    
+    public int getShardCount() {
+        return workers.size();
+    }
+    
+    /** Profiles the workers reported loading at startup. */
+    public int getProfileCount() {
+        int count = 0;
+        for (ShardWorker worker : workers) {
+            count += worker.getProfileCount();
+        }
+        return count;
+    }
+    
+    /**
+     * Runs a FIND or FILTER ({@code command}) on every shard and merges the pages. Each shard is
+     * asked for the first {@code OFFSET + LIMIT} users after the cursor, which is enough to cut the
+     * merged page; the position of the page is the sum of the shards' positions.
+     */
+    public FindResult find(String command, FindRequest request) throws IOException {
+        StringBuilder query = new StringBuilder(command).append(' ').append(request.getQuery());
+        if (request.isCountOnly()) {
+            query.append(" COUNT");
+        } else if (request.isPaged()) {
+            if (request.getLimit() >= 0) {
+                // At least one user, so an empty page means the shard has nothing after the cursor.
+                long perShard = Math.max(1, (long) request.getOffset() + request.getLimit());
+                query.append(" LIMIT ").append(Math.min(perShard, Integer.MAX_VALUE));
+            }
+            if (request.getAfter() != null) {
+                query.append(" AFTER ").append(request.getAfter());
+            }
+        }
+        
+        long total = 0;
+        long userCount = 0;
+        long skipped = 0;
+        List<String> userIds = new ArrayList<>();
+        for (ShardReply reply : query(query.toString())) {
+            long shardTotal = reply.getNumber(ReplyPrinter.TOTAL);
+            total += shardTotal;
+            userCount += reply.getNumber(ReplyPrinter.USERS);
+            List<String> page = reply.getValues(ReplyPrinter.USER);
+            if (request.getAfter() != null) {
+                skipped += page.isEmpty() ? shardTotal : reply.getNumber(ReplyPrinter.POSITION);
+            }
+            userIds.addAll(page);
+        }
+        if (request.isCountOnly()) {
+            return new FindResult(Math.toIntExact(total), 0, List.of(), false, Math.toIntExact(userCount));
+        }
+        userIds.sort(UserIdOrder.INSTANCE);
+        if (!request.isPaged()) {
+            return new FindResult(Math.toIntExact(total), 0, userIds, false, Math.toIntExact(userCount));
+        }
+        
+        int start = Math.min(request.getOffset(), userIds.size());
+        int end = request.getLimit() >= 0
+            ? (int) Math.min((long) start + request.getLimit(), userIds.size())
+            : userIds.size();
+        List<String> page = new ArrayList<>(userIds.subList(start, end));
+        long position = skipped + start;
+        return new FindResult(Math.toIntExact(total), Math.toIntExact(position), page,
+            position + page.size() < total, Math.toIntExact(userCount));
+    }
+    
+    public FindResult search(String query) throws IOException {
+        long total = 0;
+        long userCount = 0;
+        List<String> userIds = new ArrayList<>();
+        for (ShardReply reply : query("SEARCH " + query)) {
+            total += reply.getNumber(ReplyPrinter.TOTAL);
+            userCount += reply.getNumber(ReplyPrinter.USERS);
+            userIds.addAll(reply.getValues(ReplyPrinter.USER));
+        }
+        userIds.sort(UserIdOrder.INSTANCE);
+        return new FindResult(Math.toIntExact(total), 0, userIds, false, Math.toIntExact(userCount));
+    }
+    
+    /**
+     * The {@code k} highest-scoring members of a category over all shards; equal scores in id order.
+     * Each shard cuts its own ties in id order too, so the merged top k is the one a single engine has.
+     */
+    public List<ScoredUser> top(String category, int k) throws IOException {
+        List<ScoredUser> users = new ArrayList<>();
+        for (ShardReply reply : query("TOP " + k + " " + category + " BY score")) {
+            for (String row : reply.getValues(ReplyPrinter.SCORED)) {
+                int space = row.indexOf(' ');
+                users.add(new ScoredUser(row.substring(space + 1), Integer.parseInt(row.substring(0, space))));
+            }
+        }
+        users.sort(Comparator.comparingInt(ScoredUser::getScore).reversed()
+            .thenComparing(ScoredUser::getUserId, UserIdOrder.INSTANCE));
+        return new ArrayList<>(users.subList(0, Math.min(k, users.size())));
+    }
+    
+    /** Users per category and tag summed over the shards, ordered as a single engine orders them. */
+    public CategoryCounts countByCategory() throws IOException {
+        Map<String, Integer> categories = new TreeMap<>();
+        Map<String, Integer> tags = new TreeMap<>();
+        long uncategorized = 0;
+        long userCount = 0;
+        for (ShardReply reply : query("STATS BY category")) {
+            for (String row : reply.getValues(ReplyPrinter.COUNT)) {
+                int space = row.indexOf(' ');
+                String label = row.substring(space + 1);
+                int count = Integer.parseInt(row.substring(0, space));
+                (label.startsWith(TAG_PREFIX) ? tags : categories).merge(label, count, Integer::sum);
+            }
+            uncategorized += reply.getNumber(ReplyPrinter.UNCATEGORIZED);
+            userCount += reply.getNumber(ReplyPrinter.USERS);
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>(categories);
+        counts.putAll(tags);
+        return new CategoryCounts(counts, Math.toIntExact(uncategorized), Math.toIntExact(userCount));
+    }
+    
+    public boolean addTag(String userId, String tag) throws IOException {
+        return mutateTag("ADD_TAG", userId, tag);
+    }
+    
+    public boolean removeTag(String userId, String tag) throws IOException {
+        return mutateTag("REMOVE_TAG", userId, tag);
+    }
+    
+    /** Tags live with the user, so the mutation goes only to the shard that owns it. */
+    private boolean mutateTag(String command, String userId, String tag) throws IOException {
+        int shard = Partition.of(userId, workers.size());
+        if (shard < 0) {
+            return false;
+        }
+        ShardReply reply = ask(shard, command + " " + userId + " " + tag);
+        String error = reply.getError();
+        if (error != null && error.startsWith(TAG_LOG_FAILED)) {
+            throw new IOException("Shard " + shard + ": " + error);
+        }
+        return reply.isSuccess();
+    }
+    
+    /** The profile text of {@code userId} from the shard that owns it, or null if there is no such user. */
+    public List<String> getUserProfile(String userId) throws IOException {
+        int shard = Partition.of(userId, workers.size());
+        if (shard < 0) {
+            return null;
+        }
+        ShardReply reply = ask(shard, "GET_USER_PROFILE " + userId);
+        if (reply.getError() != null) {
+            if (reply.getError().startsWith("User ")) {
+                return null;
+            }
+            throw new IOException("Shard " + shard + ": " + reply.getError());
+        }
+        List<String> body = reply.getText();
+        // The worker ends the profile with an empty line of its own.
+        return body.isEmpty() ? body : body.subList(0, body.size() - 1);
+    }
+    
+    /**
+     * Sends every shard its own command, such as a snapshot file name with the shard number, and
+     * returns each shard's reply lines in the {@link ReplyPrinter} format; null for a shard that did
+     * not answer.
+     */
+    public List<List<String>> broadcast(IntFunction<String> command) {
+        List<List<String>> bodies = new ArrayList<>();
+        for (ShardReply reply : fanOut(command)) {
+            if (reply.isFailed()) {
+                warn(reply);
+                bodies.add(null);
+            } else {
+                bodies.add(reply.getLines());
+            }
+        }
+        return bodies;
+    }
+    
+    /**
+     * The replies of the shards that answered a query, warning about the others. A query error is
+     * the same on every shard and is raised as {@link IllegalArgumentException}, as the engine does.
+     */
+    private List<ShardReply> query(String command) throws IOException {
+        List<ShardReply> answered = new ArrayList<>();
+        for (ShardReply reply : fanOut(shard -> command)) {
+            if (reply.isFailed()) {
+                warn(reply);
+            } else if (reply.getError() != null) {
+                throw new IllegalArgumentException(reply.getError());
+            } else {
+                answered.add(reply);
+            }
+        }
+        if (answered.isEmpty()) {
+            throw new IOException("No shard answered within " + Config.getShardTimeoutMillis() + " ms");
+        }
+        return answered;
+    }
+    
+    /** Sends a command about one user to its shard; without that shard there is no answer at all. */
+    private ShardReply ask(int shard, String command) throws IOException {
+        ShardReply reply = workers.get(shard).call(command, Config.getShardTimeoutMillis());
+        if (reply.isFailed()) {
+            throw new IOException("Shard " + shard + " did not answer (" + reply.getFailure() + ")");
+        }
+        return reply;
+    }
+    
+    private List<ShardReply> fanOut(IntFunction<String> command) {
+        List<Callable<ShardReply>> calls = new ArrayList<>();
+        for (ShardWorker worker : workers) {
+            String shardCommand = command.apply(worker.getShard());
+            calls.add(() -> worker.call(shardCommand, Config.getShardTimeoutMillis()));
+        }
+        List<ShardReply> replies = new ArrayList<>();
+        try {
+            // Each call gives up by itself once the shard timeout has passed.
+            for (Future<ShardReply> future : executor.invokeAll(calls)) {
+                replies.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return replies;
+    }
+    
+    private static void warn(ShardReply reply) {
+        System.err.println("   ⚠ Warning: Shard " + reply.getShard() + " did not answer (" + reply.getFailure()
+            + "); its users are missing from this result");
+    }
+    
+    /** Stops every worker. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (ShardWorker worker : workers) {
+            worker.close();
+        }
+    }
+    
+    /** The merged rows of {@code STATS BY category}. */
+    public static class CategoryCounts {
+        private final Map<String, Integer> counts;
+        private final int uncategorized;
+        private final int userCount;
+        
+        CategoryCounts(Map<String, Integer> counts, int uncategorized, int userCount) {
+            this.counts = counts;
+            this.uncategorized = uncategorized;
+            this.userCount = userCount;
+        }
+        
+        public Map<String, Integer> getCounts() {
+            return counts;
+        }
+        
+        public int getUncategorized() {
+            return uncategorized;
+        }
+        
+        public int getUserCount() {
+            return userCount;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package shard;
+
+import cli.ReplyPrinter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What one worker answered to a command in the {@link ReplyPrinter} format, up to the separator
+ * line, or why it answered nothing.
+ */
+final class ShardReply {
+    private final int shard;
+    private final List<String> lines;
+    private final String failure;
+    
+    private ShardReply(int shard, List<String> lines, String failure) {
+        this.shard = shard;
+        this.lines = lines;
+        this.failure = failure;
+    }
+    
+    static ShardReply of(int shard, List<String> lines) {
+        return new ShardReply(shard, lines, null);
+    }
+    
+    static ShardReply failed(int shard, String failure) {
+        return new ShardReply(shard, List.of(), failure);
+    }
+    
+    int getShard() {
+        return shard;
+    }
+    
+    boolean isFailed() {
+        return failure != null;
+    }
+    
+    /** Why the worker did not answer: a timeout, a lost connection or an exited process. */
+    String getFailure() {
+        return failure;
+    }
+    
+    /** The worker's error message, such as a query it could not parse, or null. */
+    String getError() {
+        List<String> errors = getValues(ReplyPrinter.ERROR);
+        return errors.isEmpty() ? null : errors.get(0);
+    }
+    
+    boolean isSuccess() {
+        return !getValues(ReplyPrinter.OK).isEmpty();
+    }
+    
+    /** The value of every {@code key} field, in the order the worker printed them. */
+    List<String> getValues(String key) {
+        List<String> values = new ArrayList<>();
+        for (String line : lines) {
+            String value = ReplyPrinter.valueOf(line, key);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+    
+    /** The number in the first {@code key} field, or 0 if there is none. */
+    long getNumber(String key) {
+        List<String> values = getValues(key);
+        return values.isEmpty() ? 0 : Long.parseLong(values.get(0));
+    }
+    
+    /** Every line of the reply, fields and passed-through text alike. */
+    List<String> getLines() {
+        return lines;
+    }
+    
+    /** The text the worker passed through, such as a profile, without its {@code line} keys. */
+    List<String> getText() {
+        return getValues(ReplyPrinter.LINE);
+    }
+}
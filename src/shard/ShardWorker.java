@@ -0,0 +1,168 @@
+package shard;
+
+import cli.QueryExecutor;
+import server.QueryServer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One worker process: an engine over a single shard, serving the line protocol on a loopback port
+ * it picks itself and announces on stdout with a {@link ShardCoordinator#WORKER_READY} line.
+ */
+final class ShardWorker implements Closeable {
+    private static final long STOP_WAIT_MILLIS = 5000;
+    
+    private final int shard;
+    private final Process process;
+    private final String token;
+    private int port = -1;
+    private int profileCount;
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+    
+    private ShardWorker(int shard, Process process, String token) {
+        this.shard = shard;
+        this.process = process;
+        this.token = token;
+    }
+    
+    /** Starts the worker; {@code token} lets our connections run every command, not only client ones. */
+    static ShardWorker start(int shard, List<String> command, String token) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        builder.environment().put(QueryServer.COORDINATOR_TOKEN_VARIABLE, token);
+        return new ShardWorker(shard, builder.start(), token);
+    }
+    
+    /** Waits until the worker has loaded its shard and listens; its warnings go to our stderr. */
+    void awaitReady() throws IOException {
+        BufferedReader stdout = process.inputReader();
+        String line;
+        while (port < 0 && (line = stdout.readLine()) != null) {
+            String[] fields = line.split(" ");
+            if (fields.length == 3 && fields[0].equals(ShardCoordinator.WORKER_READY)) {
+                profileCount = Integer.parseInt(fields[2]);
+                port = Integer.parseInt(fields[1]);
+            }
+        }
+        if (port < 0) {
+            throw new IOException("Shard " + shard + " exited during startup" + exitStatus());
+        }
+        Thread drain = new Thread(() -> {
+            try {
+                stdout.transferTo(Writer.nullWriter());
+            } catch (IOException ignored) {
+            }
+        }, "shard-" + shard + "-stdout");
+        drain.setDaemon(true);
+        drain.start();
+    }
+    
+    int getShard() {
+        return shard;
+    }
+    
+    int getProfileCount() {
+        return profileCount;
+    }
+    
+    /**
+     * Sends one command and reads the reply, giving up after {@code timeoutMillis}. A reply that
+     * comes too late would be read as the answer to the next command, so the connection is dropped
+     * and reopened on the next call.
+     */
+    synchronized ShardReply call(String command, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            if (socket == null) {
+                connect(deadline);
+            }
+            out.write(command + "\n");
+            out.flush();
+            return ShardReply.of(shard, readReply(deadline));
+        } catch (SocketTimeoutException e) {
+            disconnect();
+            return ShardReply.failed(shard, "no reply within " + timeoutMillis + " ms");
+        } catch (IOException e) {
+            disconnect();
+            return ShardReply.failed(shard, process.isAlive() ? e.getMessage() : "worker exited" + exitStatus());
+        }
+    }
+    
+    private List<String> readReply(long deadline) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while (true) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                throw new SocketTimeoutException();
+            }
+            socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+            if ((line = in.readLine()) == null) {
+                throw new IOException("connection closed");
+            }
+            if (line.equals(QueryExecutor.SEPARATOR)) {
+                return lines;
+            }
+            lines.add(line);
+        }
+    }
+    
+    private void connect(long deadline) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        out.write("AUTH " + token + "\n");
+        out.flush();
+        if (ShardReply.of(shard, readReply(deadline)).getError() != null) {
+            throw new IOException("worker refused the coordinator token");
+        }
+    }
+    
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+        }
+    }
+    
+    private String exitStatus() {
+        try {
+            return " with status " + process.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+    
+    /** Stops the worker; it closes its engine (and tag log) from its shutdown hook. */
+    @Override
+    public synchronized void close() {
+        disconnect();
+        process.destroy();
+        try {
+            if (!process.waitFor(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package store;
+
+import model.ContentSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ContentStore {
+    private final Map<FileContent, byte[]> recentlyViewed;
+    
+    public ContentStore(int cacheSize) {
+        this.recentlyViewed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FileContent, byte[]> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+    
+    public ContentSource locate(Path file, long offset, int length) {
+        return new FileContent(file, offset, length);
+    }
+    
+    public ContentSource locate(Path file, String content) {
+        return new FileContent(file, 0, utf8Length(content));
+    }
+    
+    /**
+     * Text that is only held in memory because its file stores it compressed or escaped, such as a
+     * ZIP or JSONL bundle entry; {@link ContentSource#getOffset()} is -1.
+     */
+    public ContentSource hold(Path file, String content) {
+        return new HeldContent(file, content);
+    }
+    
+    private static int utf8Length(String content) {
+        int length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < content.length()
+                    && Character.isLowSurrogate(content.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private byte[] load(FileContent content) throws IOException {
+        synchronized (recentlyViewed) {
+            byte[] cached = recentlyViewed.get(content);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        byte[] bytes = new byte[content.length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try (FileChannel channel = FileChannel.open(content.file, StandardOpenOption.READ)) {
+            long position = content.offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Profile content truncated: " + content.file.getFileName());
+                }
+                position += read;
+            }
+        }
+        
+        synchronized (recentlyViewed) {
+            recentlyViewed.put(content, bytes);
+        }
+        return bytes;
+    }
+    
+    private static class HeldContent implements ContentSource {
+        private final Path file;
+        private final String content;
+        
+        HeldContent(Path file, String content) {
+            this.file = file;
+            this.content = content;
+        }
+        
+        @Override
+        public String read() {
+            return content;
+        }
+        
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        @Override
+        public Path getFile() {
+            return file;
+        }
+        
+        @Override
+        public long getOffset() {
+            return -1;
+        }
+        
+        @Override
+        public int getLength() {
+            return utf8Length(content);
+        }
+    }
+    
+    private class FileContent implements ContentSource {
+        private final Path file;
+        private final long offset;
+        private final int length;
+        
+        FileContent(Path file, long offset, int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        @Override
+        public String read() throws IOException {
+            return new String(load(this), StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(load(this));
+        }
+        
+        @Override
+        public Path getFile() {
+            return file;
+        }
+        
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+        
+        @Override
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -1,78 +1,661 @@
 package store;
 
+import model.Metric;
+import model.ProfileFeatures;
+import model.UserIds;
 import model.UserProfile;
+import parser.Tokenizer;
 
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 public class DataStore {
-    private final Map<String, UserProfile> userIndex;
-    private final Map<String, Set<String>> categoryIndex;
-    private final Map<String, Set<String>> tagIndex;
+    private final Object writeLock = new Object();
+    private final Set<Object> ownedByWriter = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private long lastGeneration;
+    private Snapshot working;
+    private volatile Snapshot published;
     
     public DataStore() {
-        this.userIndex = new HashMap<>();
-        this.categoryIndex = new HashMap<>();
-        this.tagIndex = new HashMap<>();
+        MetricColumn[] metricIndex = new MetricColumn[Metric.values().length];
+        Arrays.setAll(metricIndex, m -> new MetricColumn());
+        this.working = new Snapshot(new UserIdIndex(), new ProfileTable(), new RoaringBitmap(),
+            new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), metricIndex);
+        this.published = working.copy();
+    }
+    
+    public Snapshot snapshot() {
+        return published;
     }
     
     public void addUser(UserProfile profile) {
-        userIndex.put(profile.getUserId(), profile);
-        
-        for (String category : profile.getCategories()) {
-            categoryIndex.computeIfAbsent(category, k -> new HashSet<>())
-                        .add(profile.getUserId());
+        synchronized (writeLock) {
+            insert(profile);
         }
-        
-        for (String tag : profile.getTags()) {
-            tagIndex.computeIfAbsent(tag, k -> new HashSet<>())
-                    .add(profile.getUserId());
+    }
+    
+    public void commit() {
+        synchronized (writeLock) {
+            optimizeAndPublish();
+        }
+    }
+    
+    /**
+     * Applies a batch of added/replaced and removed users and publishes it as one snapshot, so
+     * readers see either none or all of the batch.
+     */
+    public void update(Collection<UserProfile> upserts, Collection<String> removals) {
+        synchronized (writeLock) {
+            for (UserProfile profile : upserts) {
+                insert(profile);
+            }
+            for (String userId : removals) {
+                remove(userId);
+            }
+            optimizeAndPublish();
+        }
+    }
+    
+    /**
+     * Replaces the members of the given categories and publishes the result as one snapshot. Each
+     * array holds the new score per ordinal, {@link ScoreColumn#NONE} for users outside the category;
+     * a category without members is dropped. Changed profiles are copies, so readers of the current
+     * snapshot keep seeing the old categories until the new one is published.
+     */
+    public void replaceCategories(Map<String, int[]> scores) {
+        synchronized (writeLock) {
+            working.categoryIndex = own(working.categoryIndex, HashMap::new);
+            working.scoreIndex = own(working.scoreIndex, HashMap::new);
+            for (Map.Entry<String, int[]> entry : scores.entrySet()) {
+                String category = entry.getKey();
+                int[] categoryScores = entry.getValue();
+                RoaringBitmap users = new RoaringBitmap();
+                ScoreColumn column = new ScoreColumn();
+                for (int ordinal = 0; ordinal < categoryScores.length; ordinal++) {
+                    if (categoryScores[ordinal] != ScoreColumn.NONE) {
+                        users.add(ordinal);
+                        column.set(ordinal, categoryScores[ordinal]);
+                        ownedProfile(ordinal).addCategory(category, categoryScores[ordinal]);
+                    }
+                }
+                RoaringBitmap previous = working.categoryIndex.getOrDefault(category, new RoaringBitmap());
+                RoaringBitmap.andNot(previous, users).forEach(ordinal ->
+                    ownedProfile(ordinal).removeCategory(category));
+                working.categoryGenerations = own(working.categoryGenerations, HashMap::new);
+                working.categoryGenerations.put(category, ++lastGeneration);
+                if (users.isEmpty()) {
+                    working.categoryIndex.remove(category);
+                    working.scoreIndex.remove(category);
+                } else {
+                    ownedByWriter.add(users);
+                    ownedByWriter.add(column);
+                    working.categoryIndex.put(category, users);
+                    working.scoreIndex.put(category, column);
+                }
+            }
+            optimizeAndPublish();
         }
     }
     
     public UserProfile getUser(String userId) {
-        return userIndex.get(userId);
+        return published.getUser(userId);
+    }
+    
+    public UserProfile getUser(int ordinal) {
+        return published.getUser(ordinal);
     }
     
     public Set<String> getUsersByCategory(String category) {
-        return categoryIndex.getOrDefault(category, Collections.emptySet());
+        return published.getUsersByCategory(category);
     }
     
     public Set<String> getUsersByTag(String tag) {
-        return tagIndex.getOrDefault(tag, Collections.emptySet());
+        return published.getUsersByTag(tag);
     }
     
     public boolean addTagToUser(String userId, String tag) {
-        UserProfile profile = userIndex.get(userId);
-        if (profile == null) {
-            return false;
+        synchronized (writeLock) {
+            UserProfile profile = working.getUser(userId);
+            if (profile == null) {
+                return false;
+            }
+            
+            profile = ownedProfile(profile.getOrdinal());
+            profile.addTag(tag);
+            working.tagIndex = own(working.tagIndex, HashMap::new);
+            ownedBitmap(working.tagIndex, tag).add(profile.getOrdinal());
+            touchTag(tag);
+            publish();
+            return true;
         }
-        
-        profile.addTag(tag);
-        tagIndex.computeIfAbsent(tag, k -> new HashSet<>())
-                .add(userId);
-        return true;
     }
     
     public boolean removeTagFromUser(String userId, String tag) {
-        UserProfile profile = userIndex.get(userId);
-        if (profile == null) {
-            return false;
+        synchronized (writeLock) {
+            UserProfile profile = working.getUser(userId);
+            if (profile == null || !profile.hasTag(tag)) {
+                return false;
+            }
+            
+            ownedProfile(profile.getOrdinal()).removeTag(tag);
+            working.tagIndex = own(working.tagIndex, HashMap::new);
+            RoaringBitmap users = ownedBitmap(working.tagIndex, tag);
+            users.remove(profile.getOrdinal());
+            if (users.isEmpty()) {
+                working.tagIndex.remove(tag);
+            }
+            touchTag(tag);
+            publish();
+            return true;
+        }
+    }
+    
+    /** Removes every tag from every user, e.g. before a tag checkpoint that holds them all is replayed. */
+    public void clearTags() {
+        synchronized (writeLock) {
+            if (working.tagIndex.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, RoaringBitmap> entry : working.tagIndex.entrySet()) {
+                String tag = entry.getKey();
+                entry.getValue().forEach((int ordinal) -> ownedProfile(ordinal).removeTag(tag));
+                touchTag(tag);
+            }
+            working.tagIndex = new HashMap<>();
+            publish();
+        }
+    }
+    
+    public int getUserCount() {
+        return published.getUserCount();
+    }
+    
+    private void touchTag(String tag) {
+        working.tagGenerations = own(working.tagGenerations, HashMap::new);
+        working.tagGenerations.put(tag, ++lastGeneration);
+    }
+    
+    private void insert(UserProfile profile) {
+        UserIdIndex userIndex = own(working.userIndex, UserIdIndex::copy);
+        ProfileTable ordinalIndex = own(working.ordinalIndex, ProfileTable::copy);
+        working.userIndex = userIndex;
+        working.ordinalIndex = ordinalIndex;
+        
+        UserProfile existing = working.getUser(profile.getId());
+        int ordinal;
+        if (existing != null) {
+            ordinal = existing.getOrdinal();
+            // Tags are added by analysts, not derived from the file, so they survive a reload.
+            for (String tag : existing.getTags()) {
+                profile.addTag(tag);
+            }
+            unindex(existing);
+            ordinalIndex.set(ordinal, profile);
+        } else if (!freeOrdinals.isEmpty()) {
+            ordinal = freeOrdinals.poll();
+            ordinalIndex.set(ordinal, profile);
+        } else {
+            ordinal = ordinalIndex.size();
+            ordinalIndex.add(profile);
+        }
+        profile.setOrdinal(ordinal);
+        userIndex.put(profile.getId(), ordinal);
+        working.generation = ++lastGeneration;
+        working.allUsers = own(working.allUsers, RoaringBitmap::copy);
+        working.allUsers.add(ordinal);
+        
+        working.categoryIndex = own(working.categoryIndex, HashMap::new);
+        working.scoreIndex = own(working.scoreIndex, HashMap::new);
+        for (String category : profile.getCategories()) {
+            ownedBitmap(working.categoryIndex, category).add(ordinal);
+            ownedColumn(category).set(ordinal, profile.getScore(category));
         }
         
-        boolean removed = profile.removeTag(tag);
-        if (removed) {
-            Set<String> users = tagIndex.get(tag);
-            if (users != null) {
-                users.remove(userId);
+        working.tagIndex = own(working.tagIndex, HashMap::new);
+        for (String tag : profile.getTags()) {
+            ownedBitmap(working.tagIndex, tag).add(ordinal);
+        }
+        
+        working.metricIndex = own(working.metricIndex, MetricColumn[]::clone);
+        ProfileFeatures features = profile.getFeatures();
+        for (Metric metric : Metric.values()) {
+            if (features.has(metric)) {
+                ownedMetricColumn(metric).set(ordinal, features.get(metric));
+            }
+        }
+        
+        Map<String, int[]> termPositions = profile.takeTermPositions();
+        if (termPositions != null) {
+            working.textIndex = own(working.textIndex, HashMap::new);
+            for (Map.Entry<String, int[]> entry : termPositions.entrySet()) {
+                ownedPostings(entry.getKey()).add(ordinal, entry.getValue());
+            }
+            profile.setIndexedTermCount(termPositions.size());
+        }
+    }
+    
+    private void remove(String userId) {
+        UserProfile existing = working.getUser(userId);
+        if (existing == null) {
+            return;
+        }
+        
+        int ordinal = existing.getOrdinal();
+        unindex(existing);
+        working.userIndex = own(working.userIndex, UserIdIndex::copy);
+        working.userIndex.remove(existing.getId());
+        working.ordinalIndex = own(working.ordinalIndex, ProfileTable::copy);
+        working.ordinalIndex.set(ordinal, null);
+        working.allUsers = own(working.allUsers, RoaringBitmap::copy);
+        working.allUsers.remove(ordinal);
+        working.generation = ++lastGeneration;
+        freeOrdinals.add(ordinal);
+    }
+    
+    private void optimizeAndPublish() {
+        if (ownedByWriter.contains(working.allUsers)) {
+            working.allUsers.runOptimize();
+        }
+        for (RoaringBitmap users : working.categoryIndex.values()) {
+            if (ownedByWriter.contains(users)) {
+                users.runOptimize();
+            }
+        }
+        for (ScoreColumn column : working.scoreIndex.values()) {
+            if (ownedByWriter.contains(column)) {
+                column.prepare();
+            }
+        }
+        for (PostingList postings : working.textIndex.values()) {
+            if (ownedByWriter.contains(postings)) {
+                postings.prepare();
+            }
+        }
+        publish();
+    }
+    
+    private void publish() {
+        published = working.copy();
+        ownedByWriter.clear();
+    }
+    
+    private void unindex(UserProfile profile) {
+        for (String category : profile.getCategories()) {
+            if (working.categoryIndex.containsKey(category)) {
+                working.categoryIndex = own(working.categoryIndex, HashMap::new);
+                working.scoreIndex = own(working.scoreIndex, HashMap::new);
+                RoaringBitmap users = ownedBitmap(working.categoryIndex, category);
+                users.remove(profile.getOrdinal());
+                // The column holds the same members, so it goes with the bitmap.
+                if (users.isEmpty()) {
+                    working.categoryIndex.remove(category);
+                    working.scoreIndex.remove(category);
+                } else if (working.scoreIndex.containsKey(category)) {
+                    ownedColumn(category).clear(profile.getOrdinal());
+                }
+            }
+        }
+        for (String tag : profile.getTags()) {
+            if (working.tagIndex.containsKey(tag)) {
+                working.tagIndex = own(working.tagIndex, HashMap::new);
+                RoaringBitmap users = ownedBitmap(working.tagIndex, tag);
+                users.remove(profile.getOrdinal());
                 if (users.isEmpty()) {
-                    tagIndex.remove(tag);
+                    working.tagIndex.remove(tag);
                 }
             }
         }
-        return removed;
+        working.metricIndex = own(working.metricIndex, MetricColumn[]::clone);
+        for (Metric metric : Metric.values()) {
+            if (profile.getFeatures().has(metric)) {
+                ownedMetricColumn(metric).clear(profile.getOrdinal());
+            }
+        }
+        int remaining = profile.getIndexedTermCount();
+        if (remaining == 0) {
+            return;
+        }
+        working.textIndex = own(working.textIndex, HashMap::new);
+        // The terms are not kept per profile: tokenize the text again, and scan every posting list
+        // only when that no longer finds them all (the file changed or went away under lazy content).
+        try {
+            for (String term : Tokenizer.positions(profile.getRawContent()).keySet()) {
+                if (removePosting(term, profile.getOrdinal())) {
+                    remaining--;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // Fall through to the scan.
+        }
+        if (remaining > 0) {
+            for (String term : new ArrayList<>(working.textIndex.keySet())) {
+                removePosting(term, profile.getOrdinal());
+            }
+        }
     }
     
-    public int getUserCount() {
-        return userIndex.size();
+    private boolean removePosting(String term, int ordinal) {
+        PostingList postings = working.textIndex.get(term);
+        if (postings == null || !postings.getUsers().contains(ordinal)) {
+            return false;
+        }
+        postings = ownedPostings(term);
+        postings.remove(ordinal);
+        if (postings.isEmpty()) {
+            working.textIndex.remove(term);
+        }
+        return true;
+    }
+    
+    /**
+     * The profile at {@code ordinal}, copied on first change: published snapshots share profiles
+     * with the working one, so their categories and tags must not change under a reader.
+     */
+    private UserProfile ownedProfile(int ordinal) {
+        UserProfile profile = working.ordinalIndex.get(ordinal);
+        if (ownedByWriter.contains(profile)) {
+            return profile;
+        }
+        UserProfile copy = profile.copy();
+        ownedByWriter.add(copy);
+        working.ordinalIndex = own(working.ordinalIndex, ProfileTable::copy);
+        working.ordinalIndex.set(ordinal, copy);
+        return copy;
+    }
+    
+    private RoaringBitmap ownedBitmap(Map<String, RoaringBitmap> index, String key) {
+        RoaringBitmap users = index.get(key);
+        if (users == null) {
+            users = new RoaringBitmap();
+        } else if (!ownedByWriter.contains(users)) {
+            users = users.copy();
+        } else {
+            return users;
+        }
+        ownedByWriter.add(users);
+        index.put(key, users);
+        return users;
+    }
+    
+    private ScoreColumn ownedColumn(String category) {
+        ScoreColumn column = working.scoreIndex.get(category);
+        if (column == null) {
+            column = new ScoreColumn();
+        } else if (!ownedByWriter.contains(column)) {
+            column = column.copy();
+        } else {
+            return column;
+        }
+        ownedByWriter.add(column);
+        working.scoreIndex.put(category, column);
+        return column;
+    }
+    
+    private MetricColumn ownedMetricColumn(Metric metric) {
+        MetricColumn column = working.metricIndex[metric.ordinal()];
+        if (!ownedByWriter.contains(column)) {
+            column = column.copy();
+            ownedByWriter.add(column);
+            working.metricIndex[metric.ordinal()] = column;
+        }
+        return column;
+    }
+    
+    private PostingList ownedPostings(String term) {
+        PostingList postings = working.textIndex.get(term);
+        if (postings == null) {
+            postings = new PostingList(term);
+        } else if (!ownedByWriter.contains(postings)) {
+            postings = postings.copy();
+        } else {
+            return postings;
+        }
+        ownedByWriter.add(postings);
+        working.textIndex.put(term, postings);
+        return postings;
+    }
+    
+    private <T> T own(T shared, UnaryOperator<T> copier) {
+        if (ownedByWriter.contains(shared)) {
+            return shared;
+        }
+        T copy = copier.apply(shared);
+        ownedByWriter.add(copy);
+        return copy;
+    }
+    
+    public static class Snapshot {
+        private UserIdIndex userIndex;
+        private ProfileTable ordinalIndex;
+        private RoaringBitmap allUsers;
+        private Map<String, RoaringBitmap> categoryIndex;
+        private Map<String, RoaringBitmap> tagIndex;
+        private Map<String, ScoreColumn> scoreIndex;
+        private Map<String, PostingList> textIndex;
+        private MetricColumn[] metricIndex;
+        private long generation;
+        private Map<String, Long> categoryGenerations = new HashMap<>();
+        private Map<String, Long> tagGenerations = new HashMap<>();
+        private volatile IdOrder idOrder;
+        
+        private Snapshot(UserIdIndex userIndex, ProfileTable ordinalIndex, RoaringBitmap allUsers,
+                         Map<String, RoaringBitmap> categoryIndex, Map<String, RoaringBitmap> tagIndex,
+                         Map<String, ScoreColumn> scoreIndex, Map<String, PostingList> textIndex,
+                         MetricColumn[] metricIndex) {
+            this.userIndex = userIndex;
+            this.ordinalIndex = ordinalIndex;
+            this.allUsers = allUsers;
+            this.categoryIndex = categoryIndex;
+            this.tagIndex = tagIndex;
+            this.scoreIndex = scoreIndex;
+            this.textIndex = textIndex;
+            this.metricIndex = metricIndex;
+        }
+        
+        private Snapshot copy() {
+            Snapshot copy = new Snapshot(userIndex, ordinalIndex, allUsers, categoryIndex, tagIndex, scoreIndex,
+                textIndex, metricIndex);
+            copy.generation = generation;
+            copy.categoryGenerations = categoryGenerations;
+            copy.tagGenerations = tagGenerations;
+            IdOrder order = idOrder;
+            if (order != null && order.generation == generation) {
+                copy.idOrder = order;
+            }
+            return copy;
+        }
+        
+        public UserProfile getUser(String userId) {
+            return getUser(UserIds.tryParse(userId));
+        }
+        
+        /** The user with the id in the numeric form of {@link UserIds}, or null. */
+        public UserProfile getUser(long id) {
+            int ordinal = userIndex.get(id);
+            return ordinal >= 0 ? ordinalIndex.get(ordinal) : null;
+        }
+        
+        public UserProfile getUser(int ordinal) {
+            return ordinalIndex.get(ordinal);
+        }
+        
+        public Set<String> getUsersByCategory(String category) {
+            RoaringBitmap users = categoryIndex.get(category);
+            return users != null ? toUserIds(users) : Collections.emptySet();
+        }
+        
+        public Set<String> getUsersByTag(String tag) {
+            RoaringBitmap users = tagIndex.get(tag);
+            return users != null ? toUserIds(users) : Collections.emptySet();
+        }
+        
+        public RoaringBitmap getAllUsers() {
+            return allUsers;
+        }
+        
+        public List<UserProfile> getUsers() {
+            List<UserProfile> users = new ArrayList<>(userIndex.size());
+            for (int ordinal = 0; ordinal < ordinalIndex.size(); ordinal++) {
+                UserProfile profile = ordinalIndex.get(ordinal);
+                if (profile != null) {
+                    users.add(profile);
+                }
+            }
+            return users;
+        }
+        
+        public RoaringBitmap getCategoryBitmap(String category) {
+            return categoryIndex.getOrDefault(category, new RoaringBitmap());
+        }
+        
+        public RoaringBitmap getTagBitmap(String tag) {
+            return tagIndex.getOrDefault(tag, new RoaringBitmap());
+        }
+        
+        public ScoreColumn getScoreColumn(String category) {
+            ScoreColumn column = scoreIndex.get(category);
+            return column != null ? column : new ScoreColumn();
+        }
+        
+        /** The users whose text contains the term, given in its normalized (tokenized) form. */
+        public PostingList getPostings(String term) {
+            PostingList postings = textIndex.get(term);
+            return postings != null ? postings : new PostingList(term);
+        }
+        
+        public MetricColumn getMetricColumn(Metric metric) {
+            return metricIndex[metric.ordinal()];
+        }
+        
+        /** One more than the highest ordinal in use; ordinals of removed users may be free. */
+        public int getOrdinalCount() {
+            return ordinalIndex.size();
+        }
+        
+        /**
+         * Changes whenever users are added, replaced or removed. Category and tag membership changes
+         * that leave the users alone only change the generation of that category or tag.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+        
+        public long getCategoryGeneration(String category) {
+            return categoryGenerations.getOrDefault(category, 0L);
+        }
+        
+        public long getTagGeneration(String tag) {
+            return tagGenerations.getOrDefault(tag, 0L);
+        }
+        
+        public Set<String> getTerms() {
+            return Collections.unmodifiableSet(textIndex.keySet());
+        }
+        
+        public Set<String> getCategories() {
+            return Collections.unmodifiableSet(categoryIndex.keySet());
+        }
+        
+        public Set<String> getTags() {
+            return Collections.unmodifiableSet(tagIndex.keySet());
+        }
+        
+        /**
+         * Returns the users of {@code users} sorted by {@link UserIdOrder}. The rank of every user is
+         * computed once per {@link #getGeneration() generation} and shared by later snapshots until a
+         * user is added, replaced or removed.
+         */
+        public int[] toOrderedOrdinals(RoaringBitmap users) {
+            int[] ranks = getIdRanks();
+            long[] keyed = new long[users.getCardinality()];
+            int[] position = {0};
+            users.forEach(ordinal -> keyed[position[0]++] = (long) ranks[ordinal] << 32 | ordinal);
+            Arrays.sort(keyed);
+            int[] ordinals = new int[keyed.length];
+            for (int i = 0; i < keyed.length; i++) {
+                ordinals[i] = (int) keyed[i];
+            }
+            return ordinals;
+        }
+        
+        private int[] getIdRanks() {
+            IdOrder order = idOrder;
+            if (order == null || order.generation != generation) {
+                order = new IdOrder(ordinalIndex, generation);
+                idOrder = order;
+            }
+            return order.ranks;
+        }
+        
+        public Set<String> toUserIds(RoaringBitmap users) {
+            return new UserIdSet(this, users);
+        }
+        
+        public int getUserCount() {
+            return userIndex.size();
+        }
+    }
+    
+    private static class IdOrder {
+        private final long generation;
+        private final int[] ranks;
+        
+        IdOrder(ProfileTable ordinalIndex, long generation) {
+            this.generation = generation;
+            Integer[] ordinals = new Integer[ordinalIndex.size()];
+            long[] ids = new long[ordinals.length];
+            int count = 0;
+            for (int ordinal = 0; ordinal < ordinals.length; ordinal++) {
+                UserProfile profile = ordinalIndex.get(ordinal);
+                if (profile != null) {
+                    ids[ordinal] = profile.getId();
+                    ordinals[count++] = ordinal;
+                }
+            }
+            Arrays.sort(ordinals, 0, count, (a, b) -> UserIds.compare(ids[a], ids[b]));
+            this.ranks = new int[ordinals.length];
+            for (int rank = 0; rank < count; rank++) {
+                ranks[ordinals[rank]] = rank;
+            }
+        }
+    }
+    
+    private static class UserIdSet extends AbstractSet<String> {
+        private final Snapshot snapshot;
+        private final RoaringBitmap users;
+        
+        UserIdSet(Snapshot snapshot, RoaringBitmap users) {
+            this.snapshot = snapshot;
+            this.users = users;
+        }
+        
+        @Override
+        public Iterator<String> iterator() {
+            PrimitiveIterator.OfInt ordinals = users.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return ordinals.hasNext();
+                }
+                
+                @Override
+                public String next() {
+                    return snapshot.getUser(ordinals.nextInt()).getUserId();
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            return users.getCardinality();
+        }
+        
+        @Override
+        public boolean contains(Object o) {
+            UserProfile profile = o instanceof String ? snapshot.getUser((String) o) : null;
+            return profile != null && users.contains(profile.getOrdinal());
+        }
     }
 }
@@ -0,0 +1,77 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * One profile metric for every user, indexed by ordinal, with a bitmap of the users whose profile
+ * has the metric at all. Filters are evaluated as word-at-a-time scans over both arrays.
+ */
+public class MetricColumn {
+    private long[] values;
+    private long[] present;
+    
+    MetricColumn() {
+        this(new long[0], new long[0]);
+    }
+    
+    private MetricColumn(long[] values, long[] present) {
+        this.values = values;
+        this.present = present;
+    }
+    
+    MetricColumn copy() {
+        return new MetricColumn(values.clone(), present.clone());
+    }
+    
+    void set(int ordinal, long value) {
+        if (ordinal >= values.length) {
+            values = Arrays.copyOf(values, Math.max(ordinal + 1, values.length * 2));
+            present = Arrays.copyOf(present, (values.length + 63) >>> 6);
+        }
+        values[ordinal] = value;
+        present[ordinal >>> 6] |= 1L << ordinal;
+    }
+    
+    void clear(int ordinal) {
+        if (ordinal < values.length) {
+            values[ordinal] = 0;
+            present[ordinal >>> 6] &= ~(1L << ordinal);
+        }
+    }
+    
+    public boolean has(int ordinal) {
+        return ordinal < values.length && (present[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+    
+    public long get(int ordinal) {
+        return ordinal < values.length ? values[ordinal] : 0;
+    }
+    
+    /**
+     * Clears the bit of every user in {@code matches} (bit {@code i} of word {@code w} is ordinal
+     * {@code w * 64 + i}) whose value is missing or outside {@code min..max}, both inclusive.
+     */
+    public void retainRange(long[] matches, long min, long max) {
+        int words = Math.min(matches.length, present.length);
+        for (int w = 0; w < words; w++) {
+            long candidates = matches[w] & present[w];
+            if (candidates == 0) {
+                matches[w] = 0;
+                continue;
+            }
+            int base = w << 6;
+            int end = Math.min(64, values.length - base);
+            long inRange = 0;
+            for (int bit = 0; bit < end; bit++) {
+                long value = values[base + bit];
+                inRange |= (value >= min & value <= max ? 1L : 0L) << bit;
+            }
+            matches[w] = candidates & inRange;
+        }
+        Arrays.fill(matches, words, matches.length, 0L);
+    }
+    
+    public long getSizeInBytes() {
+        return values.length * 8L + present.length * 8L;
+    }
+}
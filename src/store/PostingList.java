@@ -0,0 +1,201 @@
+package store;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+/**
+ * The users whose profile text contains one term, and where. Membership is a bitmap so terms can be
+ * intersected like categories; the token positions needed for phrases are kept per user, in ordinal
+ * order, as a varint count followed by varint gaps.
+ *
+ * <p>Users added in ordinal order, as during a load, are appended to the encoded form. Any other
+ * change decodes the list into {@link #edits} until {@link #prepare()} encodes it again.
+ */
+public class PostingList {
+    private final String term;
+    private final RoaringBitmap users;
+    private byte[] positions;
+    private int length;
+    private int lastOrdinal = -1;
+    private TreeMap<Integer, int[]> edits;
+    
+    PostingList(String term) {
+        this(term, new RoaringBitmap(), new byte[16], 0, -1);
+    }
+    
+    private PostingList(String term, RoaringBitmap users, byte[] positions, int length, int lastOrdinal) {
+        this.term = term;
+        this.users = users;
+        this.positions = positions;
+        this.length = length;
+        this.lastOrdinal = lastOrdinal;
+    }
+    
+    PostingList copy() {
+        PostingList copy = new PostingList(term, users.copy(), Arrays.copyOf(positions, length), length, lastOrdinal);
+        if (edits != null) {
+            copy.edits = new TreeMap<>(edits);
+        }
+        return copy;
+    }
+    
+    void add(int ordinal, int[] occurrences) {
+        if (edits == null && ordinal > lastOrdinal) {
+            append(occurrences);
+            lastOrdinal = ordinal;
+        } else {
+            edits().put(ordinal, occurrences);
+        }
+        users.add(ordinal);
+    }
+    
+    void remove(int ordinal) {
+        if (users.contains(ordinal)) {
+            edits().remove(ordinal);
+            users.remove(ordinal);
+        }
+    }
+    
+    /** Re-encodes a list that was changed out of order and trims it for publishing. */
+    void prepare() {
+        if (edits != null) {
+            length = 0;
+            lastOrdinal = -1;
+            for (Map.Entry<Integer, int[]> entry : edits.entrySet()) {
+                append(entry.getValue());
+                lastOrdinal = entry.getKey();
+            }
+            edits = null;
+        }
+        if (positions.length != length) {
+            positions = Arrays.copyOf(positions, length);
+        }
+        users.runOptimize();
+    }
+    
+    public String getTerm() {
+        return term;
+    }
+    
+    /** The users containing the term; callers must not modify it. */
+    public RoaringBitmap getUsers() {
+        return users;
+    }
+    
+    public boolean isEmpty() {
+        return users.isEmpty();
+    }
+    
+    public long getSizeInBytes() {
+        return users.getSizeInBytes() + positions.length;
+    }
+    
+    /** Reads positions for members in ascending ordinal order without decoding the whole list. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    /** The encoded positions of every member, in ordinal order. */
+    byte[] encodedPositions() {
+        if (edits == null) {
+            return Arrays.copyOf(positions, length);
+        }
+        PostingList encoded = copy();
+        encoded.prepare();
+        return encoded.positions;
+    }
+    
+    private TreeMap<Integer, int[]> edits() {
+        if (edits == null) {
+            TreeMap<Integer, int[]> decoded = new TreeMap<>();
+            Cursor cursor = cursor();
+            users.forEach(ordinal -> decoded.put(ordinal, cursor.positions(ordinal)));
+            edits = decoded;
+        }
+        return edits;
+    }
+    
+    private void append(int[] occurrences) {
+        ensureCapacity(5 * (occurrences.length + 1));
+        length = writeVarInt(positions, length, occurrences.length);
+        int previous = 0;
+        for (int position : occurrences) {
+            length = writeVarInt(positions, length, position - previous);
+            previous = position;
+        }
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (length + extra > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(length + extra, positions.length * 2));
+        }
+    }
+    
+    static int writeVarInt(byte[] target, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+    
+    /** Decodes the positions of consecutive members from an encoded buffer. */
+    static class Decoder {
+        private final byte[] encoded;
+        private int offset;
+        
+        Decoder(byte[] encoded) {
+            this.encoded = encoded;
+        }
+        
+        int[] next() {
+            int[] occurrences = new int[readVarInt()];
+            int position = 0;
+            for (int i = 0; i < occurrences.length; i++) {
+                position += readVarInt();
+                occurrences[i] = position;
+            }
+            return occurrences;
+        }
+        
+        void skip() {
+            for (int count = readVarInt(); count > 0; count--) {
+                readVarInt();
+            }
+        }
+        
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+    
+    public class Cursor {
+        private final PrimitiveIterator.OfInt members = users.iterator();
+        private final Decoder decoder = new Decoder(positions);
+        
+        private Cursor() {
+        }
+        
+        /** Positions of {@code ordinal}, a member above any asked for before. */
+        public int[] positions(int ordinal) {
+            if (edits != null) {
+                return edits.get(ordinal);
+            }
+            while (members.nextInt() != ordinal) {
+                decoder.skip();
+            }
+            return decoder.next();
+        }
+    }
+}
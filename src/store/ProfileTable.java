@@ -0,0 +1,73 @@
+package store;
+
+import model.UserProfile;
+
+import java.util.Arrays;
+
+/**
+ * The profile of every ordinal, in fixed-size pages. Copy-on-write copies only the page table;
+ * a page is copied the first time the copy changes it, so replacing one profile in a large store
+ * costs a page rather than the whole index.
+ */
+final class ProfileTable {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    
+    private UserProfile[][] pages;
+    private boolean[] ownedPages;
+    private int size;
+    
+    ProfileTable() {
+        this.pages = new UserProfile[0][];
+        this.ownedPages = new boolean[0];
+    }
+    
+    private ProfileTable(ProfileTable other) {
+        this.pages = other.pages.clone();
+        this.ownedPages = new boolean[pages.length];
+        this.size = other.size;
+    }
+    
+    ProfileTable copy() {
+        return new ProfileTable(this);
+    }
+    
+    /** One more than the highest ordinal ever added; slots of removed users hold null. */
+    int size() {
+        return size;
+    }
+    
+    UserProfile get(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for size " + size);
+        }
+        return pages[ordinal >>> PAGE_BITS][ordinal & (PAGE_SIZE - 1)];
+    }
+    
+    void set(int ordinal, UserProfile profile) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of bounds for size " + size);
+        }
+        ownedPage(ordinal >>> PAGE_BITS)[ordinal & (PAGE_SIZE - 1)] = profile;
+    }
+    
+    void add(UserProfile profile) {
+        int page = size >>> PAGE_BITS;
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, page + 1);
+            ownedPages = Arrays.copyOf(ownedPages, page + 1);
+            pages[page] = new UserProfile[PAGE_SIZE];
+            ownedPages[page] = true;
+        }
+        size++;
+        set(size - 1, profile);
+    }
+    
+    private UserProfile[] ownedPage(int page) {
+        if (!ownedPages[page]) {
+            pages[page] = pages[page].clone();
+            ownedPages[page] = true;
+        }
+        return pages[page];
+    }
+}
@@ -0,0 +1,612 @@
+package store;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+public class RoaringBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+    
+    public RoaringBitmap() {
+        this.keys = new char[4];
+        this.containers = new Container[4];
+        this.size = 0;
+    }
+    
+    private RoaringBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+    
+    public boolean add(int value) {
+        char high = (char) (value >>> 16);
+        int index = indexOf(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertAt(index, high, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) value);
+        return containers[index].cardinality() != before;
+    }
+    
+    public boolean remove(int value) {
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        Container updated = container.remove((char) value);
+        if (updated.cardinality() == 0) {
+            removeAt(index);
+        } else {
+            containers[index] = updated;
+        }
+        return updated.cardinality() != before;
+    }
+    
+    public boolean contains(int value) {
+        int index = indexOf((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+    
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public long getSizeInBytes() {
+        long bytes = keys.length * 2L + containers.length * 8L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+    
+    public RoaringBitmap copy() {
+        Container[] copied = new Container[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            copied[i] = containers[i].copy();
+        }
+        return new RoaringBitmap(Arrays.copyOf(keys, copied.length), copied, size);
+    }
+    
+    public void runOptimize() {
+        for (int i = 0; i < size; i++) {
+            containers[i] = containers[i].runOptimize();
+        }
+    }
+    
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+    
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int containerIndex = 0;
+            private int[] values = new int[0];
+            private int position = 0;
+            
+            @Override
+            public boolean hasNext() {
+                while (position >= values.length) {
+                    if (containerIndex >= size) {
+                        return false;
+                    }
+                    values = containers[containerIndex].toArray(keys[containerIndex] << 16);
+                    containerIndex++;
+                    position = 0;
+                }
+                return true;
+            }
+            
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return values[position++];
+            }
+        };
+    }
+    
+    /** Builds a bitmap from a plain bitset in which bit {@code i} of word {@code w} is value {@code w * 64 + i}. */
+    public static RoaringBitmap fromWords(long[] words) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (int from = 0; from < words.length; from += WORDS) {
+            Container container = Container.fromWords(Arrays.copyOfRange(words, from, from + WORDS));
+            if (container.cardinality() > 0) {
+                result.append((char) (from / WORDS), container);
+            }
+        }
+        return result;
+    }
+    
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Container container = a.containers[i].and(b.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(a.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i >= a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    
+    public static RoaringBitmap andNot(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+            Container container = j < b.size && b.keys[j] == a.keys[i]
+                ? a.containers[i].andNot(b.containers[j])
+                : a.containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.append(a.keys[i], container);
+            }
+        }
+        return result;
+    }
+    
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+    
+    private void insertAt(int index, char key, Container container) {
+        ensureCapacity(size + 1);
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+    
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+    
+    private void append(char key, Container container) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newLength = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+        }
+    }
+    
+    private abstract static class Container {
+        abstract Container add(char value);
+        abstract Container remove(char value);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract long[] toWords();
+        abstract void forEach(int high, IntConsumer action);
+        abstract Container copy();
+        abstract long sizeInBytes();
+        
+        int[] toArray(int high) {
+            int[] values = new int[cardinality()];
+            int[] position = {0};
+            forEach(high, value -> values[position[0]++] = value);
+            return values;
+        }
+        
+        Container and(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, true);
+            }
+            if (other instanceof ArrayContainer) {
+                return ((ArrayContainer) other).filter(this, true);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= otherWords[i];
+            }
+            return fromWords(words);
+        }
+        
+        Container or(Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                    && cardinality() + other.cardinality() <= ARRAY_MAX) {
+                return ((ArrayContainer) this).merge((ArrayContainer) other);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] |= otherWords[i];
+            }
+            return fromWords(words);
+        }
+        
+        Container andNot(Container other) {
+            if (this instanceof ArrayContainer) {
+                return ((ArrayContainer) this).filter(other, false);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= ~otherWords[i];
+            }
+            return fromWords(words);
+        }
+        
+        Container runOptimize() {
+            long[] words = toWords();
+            int runs = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                long carry = i > 0 ? words[i - 1] >>> 63 : 0;
+                runs += Long.bitCount(word & ~((word << 1) | carry));
+            }
+            int runBytes = 2 + 4 * runs;
+            int currentBytes = cardinality() <= ARRAY_MAX ? 2 * cardinality() : 8 * WORDS;
+            if (runBytes < currentBytes) {
+                return RunContainer.fromWords(words, runs);
+            }
+            return this instanceof RunContainer ? fromWords(words) : this;
+        }
+        
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[Math.max(cardinality, 4)];
+            int position = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[position++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+    
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+        
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+        
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+        
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality >= ARRAY_MAX) {
+                return new BitmapContainer(toWords(), cardinality).add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, values.length * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+        
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+        
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+        
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+        
+        @Override
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+        
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+        
+        @Override
+        Container runOptimize() {
+            // Counted from the sorted values: most text-index containers hold a handful of users.
+            int runs = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (i == 0 || values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            return 2 + 4 * runs < 2 * cardinality ? RunContainer.fromWords(toWords(), runs) : this;
+        }
+        
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 4)), cardinality);
+        }
+        
+        @Override
+        long sizeInBytes() {
+            return 16 + values.length * 2L;
+        }
+        
+        ArrayContainer filter(Container other, boolean keep) {
+            char[] result = new char[Math.max(cardinality, 4)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i]) == keep) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+        
+        ArrayContainer merge(ArrayContainer other) {
+            char[] result = new char[Math.max(cardinality + other.cardinality, 4)];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality || j < other.cardinality) {
+                if (j >= other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i >= cardinality || values[i] > other.values[j]) {
+                    result[count++] = other.values[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+    }
+    
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+        
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+        
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+        
+        @Override
+        Container remove(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+                if (cardinality <= ARRAY_MAX) {
+                    return fromWords(words);
+                }
+            }
+            return this;
+        }
+        
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+        
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+        
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+        
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | (i * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+        
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+        
+        @Override
+        long sizeInBytes() {
+            return 16 + words.length * 8L;
+        }
+    }
+    
+    private static class RunContainer extends Container {
+        private final char[] starts;
+        private final char[] lengths;
+        private final int cardinality;
+        
+        private RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+        
+        static RunContainer fromWords(long[] words, int runs) {
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int run = -1;
+            int cardinality = 0;
+            boolean inRun = false;
+            for (int value = 0; value < 65536; value++) {
+                boolean set = (words[value >>> 6] & (1L << value)) != 0;
+                if (set) {
+                    cardinality++;
+                    if (inRun) {
+                        lengths[run]++;
+                    } else {
+                        run++;
+                        starts[run] = (char) value;
+                        lengths[run] = 0;
+                        inRun = true;
+                    }
+                } else {
+                    inRun = false;
+                }
+            }
+            return new RunContainer(starts, lengths, cardinality);
+        }
+        
+        @Override
+        Container add(char value) {
+            return contains(value) ? this : Container.fromWords(toWords()).add(value);
+        }
+        
+        @Override
+        Container remove(char value) {
+            return contains(value) ? Container.fromWords(toWords()).remove(value) : this;
+        }
+        
+        @Override
+        boolean contains(char value) {
+            int index = Arrays.binarySearch(starts, value);
+            if (index >= 0) {
+                return true;
+            }
+            index = -index - 2;
+            return index >= 0 && value - starts[index] <= lengths[index];
+        }
+        
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+        
+        @Override
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            for (int run = 0; run < starts.length; run++) {
+                int end = starts[run] + lengths[run];
+                for (int value = starts[run]; value <= end; value++) {
+                    words[value >>> 6] |= 1L << value;
+                }
+            }
+            return words;
+        }
+        
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int run = 0; run < starts.length; run++) {
+                int end = starts[run] + lengths[run];
+                for (int value = starts[run]; value <= end; value++) {
+                    action.accept(high | value);
+                }
+            }
+        }
+        
+        @Override
+        Container copy() {
+            return this;
+        }
+        
+        @Override
+        long sizeInBytes() {
+            return 16 + (starts.length + lengths.length) * 2L;
+        }
+    }
+}
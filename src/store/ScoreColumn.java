@@ -0,0 +1,124 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * Classifier scores of one category, indexed by user ordinal, with {@link #NONE} for users outside
+ * the category. The members sorted by score are built once per column and shared by every
+ * snapshot until the column changes.
+ */
+public class ScoreColumn {
+    public static final int NONE = -1;
+    
+    private int[] scores;
+    private volatile Ranking ranking;
+    
+    ScoreColumn() {
+        this.scores = new int[0];
+    }
+    
+    private ScoreColumn(int[] scores) {
+        this.scores = scores;
+    }
+    
+    ScoreColumn copy() {
+        return new ScoreColumn(scores.clone());
+    }
+    
+    void set(int ordinal, int score) {
+        if (ordinal >= scores.length) {
+            int length = scores.length;
+            scores = Arrays.copyOf(scores, Math.max(ordinal + 1, length * 2));
+            Arrays.fill(scores, length, scores.length, NONE);
+        }
+        scores[ordinal] = score;
+        ranking = null;
+    }
+    
+    void clear(int ordinal) {
+        if (ordinal < scores.length) {
+            scores[ordinal] = NONE;
+            ranking = null;
+        }
+    }
+    
+    public int get(int ordinal) {
+        return ordinal < scores.length ? scores[ordinal] : NONE;
+    }
+    
+    /**
+     * Up to {@code k} members, highest score first, and after them every member that ties with the
+     * k-th, so the caller can choose among equal scores; equal scores keep ordinal order.
+     */
+    public int[] top(int k) {
+        Ranking sorted = ranking();
+        int end = Math.min(k, sorted.ordinals.length);
+        while (end > 0 && end < sorted.ordinals.length && sorted.scores[end] == sorted.scores[end - 1]) {
+            end++;
+        }
+        return Arrays.copyOf(sorted.ordinals, end);
+    }
+    
+    /** Members scoring between {@code min} and {@code max}, both inclusive. */
+    public RoaringBitmap range(int min, int max) {
+        Ranking sorted = ranking();
+        // Scores are descending: skip those above max, stop at the first one below min.
+        int from = firstAtOrBelow(sorted.scores, max);
+        int to = firstAtOrBelow(sorted.scores, min - 1);
+        RoaringBitmap users = new RoaringBitmap();
+        for (int i = from; i < to; i++) {
+            users.add(sorted.ordinals[i]);
+        }
+        return users;
+    }
+    
+    /** Builds the sorted index now rather than on the first query. */
+    void prepare() {
+        ranking();
+    }
+    
+    private static int firstAtOrBelow(int[] descending, long bound) {
+        int low = 0;
+        int high = descending.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (descending[mid] > bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private Ranking ranking() {
+        Ranking sorted = ranking;
+        if (sorted == null) {
+            sorted = new Ranking(scores);
+            ranking = sorted;
+        }
+        return sorted;
+    }
+    
+    private static class Ranking {
+        private final int[] ordinals;
+        private final int[] scores;
+        
+        Ranking(int[] column) {
+            long[] keyed = new long[column.length];
+            int count = 0;
+            for (int ordinal = 0; ordinal < column.length; ordinal++) {
+                if (column[ordinal] != NONE) {
+                    keyed[count++] = (long) (Integer.MAX_VALUE - column[ordinal]) << 32 | ordinal;
+                }
+            }
+            Arrays.sort(keyed, 0, count);
+            this.ordinals = new int[count];
+            this.scores = new int[count];
+            for (int i = 0; i < count; i++) {
+                ordinals[i] = (int) keyed[i];
+                scores[i] = Integer.MAX_VALUE - (int) (keyed[i] >>> 32);
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package store;
+
+import model.ContentSource;
+import model.Metric;
+import model.ProfileFeatures;
+import model.UserProfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public class SnapshotFile {
+    private static final int MAGIC = 0x44565353;
+    private static final int VERSION = 5;
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * @param ruleHashes the definition hash of every category of the rules that classified the
+     *                   snapshot, so a load with other rules can tell which categories are stale
+     */
+    public static long write(DataStore.Snapshot snapshot, Map<String, String> ruleHashes, Path target)
+            throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        List<UserProfile> users = snapshot.getUsers();
+        for (UserProfile profile : users) {
+            if (profile.getContentSource().getOffset() < 0) {
+                throw new IOException("Profile text of " + profile.getUserId() + " is only held in memory ("
+                    + profile.getContentSource().getFile().getFileName() + " stores it compressed or escaped); "
+                    + "snapshots need profiles loaded from a directory, TAR or length-prefixed bundle");
+            }
+        }
+        Map<Path, Integer> files = new LinkedHashMap<>();
+        Map<Path, Long> extents = new HashMap<>();
+        for (UserProfile profile : users) {
+            ContentSource source = profile.getContentSource();
+            files.putIfAbsent(source.getFile(), files.size());
+            extents.merge(source.getFile(), source.getOffset() + source.getLength(), Math::max);
+        }
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        Map<String, Integer> tags = new LinkedHashMap<>();
+        for (UserProfile profile : users) {
+            profile.getCategories().forEach(c -> categories.putIfAbsent(c, categories.size()));
+            profile.getTags().forEach(t -> tags.putIfAbsent(t, tags.size()));
+        }
+        
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarLong(out, ruleHashes.size());
+            for (Map.Entry<String, String> rule : ruleHashes.entrySet()) {
+                out.writeUTF(rule.getKey());
+                out.writeUTF(rule.getValue());
+            }
+            writeVarLong(out, files.size());
+            for (Path file : files.keySet()) {
+                writeFileStamp(out, file, extents.get(file));
+            }
+            writeStrings(out, categories);
+            writeStrings(out, tags);
+            writeVarLong(out, users.size());
+            
+            for (UserProfile profile : users) {
+                out.writeUTF(profile.getUserId());
+                out.writeUTF(profile.getUuid());
+                Set<String> userCategories = profile.getCategories();
+                writeIds(out, userCategories, categories);
+                for (String category : userCategories) {
+                    writeVarLong(out, profile.getScore(category));
+                }
+                writeIds(out, profile.getTags(), tags);
+                
+                ContentSource source = profile.getContentSource();
+                writeVarLong(out, files.get(source.getFile()));
+                writeVarLong(out, source.getOffset());
+                writeVarLong(out, source.getLength());
+                
+                ProfileFeatures features = profile.getFeatures();
+                int presentMask = 0;
+                for (Metric metric : Metric.values()) {
+                    if (features.has(metric)) {
+                        presentMask |= 1 << metric.ordinal();
+                    }
+                }
+                writeVarLong(out, presentMask);
+                for (Metric metric : Metric.values()) {
+                    if (features.has(metric)) {
+                        writeVarLong(out, features.get(metric));
+                    }
+                }
+                out.writeBoolean(features.isContactChatDisabled());
+                writeVarLong(out, features.getCategorySlugs().length);
+                for (String slug : features.getCategorySlugs()) {
+                    out.writeUTF(slug);
+                }
+            }
+            writeTextIndex(out, snapshot, users);
+            
+            out.flush();
+            out.writeLong(checksum.getValue());
+        }
+        
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+    
+    public static Contents read(Path source, ContentStore contentStore) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(source), BUFFER_SIZE)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, checksum));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a profile snapshot: " + source);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + source
+                    + "; delete it to rebuild it from the profiles");
+            }
+            Map<String, String> ruleHashes = new LinkedHashMap<>();
+            int ruleCount = (int) readVarLong(in);
+            for (int r = 0; r < ruleCount; r++) {
+                ruleHashes.put(in.readUTF(), in.readUTF());
+            }
+            Path[] files = new Path[(int) readVarLong(in)];
+            Map<Path, long[]> fileStamps = new LinkedHashMap<>();
+            for (int f = 0; f < files.length; f++) {
+                files[f] = Paths.get(in.readUTF());
+                fileStamps.put(files[f], new long[] {in.readLong(), in.readLong()});
+            }
+            String[] categories = readStrings(in);
+            String[] tags = readStrings(in);
+            int userCount = (int) readVarLong(in);
+            
+            List<UserProfile> users = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                String userId = in.readUTF();
+                String uuid = in.readUTF();
+                String[] userCategories = readIds(in, categories);
+                int[] scores = new int[userCategories.length];
+                for (int c = 0; c < scores.length; c++) {
+                    scores[c] = (int) readVarLong(in);
+                }
+                String[] userTags = readIds(in, tags);
+                
+                Path file = files[(int) readVarLong(in)];
+                long offset = readVarLong(in);
+                int length = (int) readVarLong(in);
+                
+                int presentMask = (int) readVarLong(in);
+                long[] metrics = new long[Metric.values().length];
+                for (Metric metric : Metric.values()) {
+                    if ((presentMask & (1 << metric.ordinal())) != 0) {
+                        metrics[metric.ordinal()] = readVarLong(in);
+                    }
+                }
+                boolean contactChatDisabled = in.readBoolean();
+                String[] slugs = new String[(int) readVarLong(in)];
+                for (int s = 0; s < slugs.length; s++) {
+                    slugs[s] = in.readUTF();
+                }
+                
+                UserProfile profile = new UserProfile(userId, uuid, null,
+                    new ProfileFeatures(metrics, presentMask, contactChatDisabled, slugs, null));
+                profile.attachContent(contentStore.locate(file, offset, length));
+                for (int c = 0; c < userCategories.length; c++) {
+                    profile.addCategory(userCategories[c], scores[c]);
+                }
+                for (String tag : userTags) {
+                    profile.addTag(tag);
+                }
+                users.add(profile);
+            }
+            readTextIndex(in, users);
+            
+            long expected = checksum.getValue();
+            long stored = new DataInputStream(raw).readLong();
+            if (stored != expected) {
+                throw new IOException("Snapshot checksum mismatch in " + source);
+            }
+            return new Contents(users, ruleHashes, fileStamps);
+        }
+    }
+    
+    /**
+     * Writes each term's users as positions in the file. Users are written in ordinal order, so the
+     * encoded token positions stay valid and are copied as they are.
+     */
+    private static void writeTextIndex(DataOutputStream out, DataStore.Snapshot snapshot, List<UserProfile> users)
+            throws IOException {
+        int[] positionInFile = new int[users.isEmpty() ? 0 : users.get(users.size() - 1).getOrdinal() + 1];
+        for (int i = 0; i < users.size(); i++) {
+            positionInFile[users.get(i).getOrdinal()] = i;
+        }
+        Set<String> terms = snapshot.getTerms();
+        writeVarLong(out, terms.size());
+        for (String term : terms) {
+            PostingList postings = snapshot.getPostings(term);
+            out.writeUTF(term);
+            writeVarLong(out, postings.getUsers().getCardinality());
+            int previous = -1;
+            for (PrimitiveIterator.OfInt members = postings.getUsers().iterator(); members.hasNext(); ) {
+                int user = positionInFile[members.nextInt()];
+                writeVarLong(out, user - previous);
+                previous = user;
+            }
+            byte[] encoded = postings.encodedPositions();
+            writeVarLong(out, encoded.length);
+            out.write(encoded);
+        }
+    }
+    
+    private static void readTextIndex(DataInputStream in, List<UserProfile> users) throws IOException {
+        List<Map<String, int[]>> positions = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            positions.add(new HashMap<>());
+        }
+        int termCount = (int) readVarLong(in);
+        for (int t = 0; t < termCount; t++) {
+            String term = in.readUTF();
+            int[] members = new int[(int) readVarLong(in)];
+            int user = -1;
+            for (int m = 0; m < members.length; m++) {
+                user += (int) readVarLong(in);
+                members[m] = user;
+            }
+            byte[] encoded = new byte[(int) readVarLong(in)];
+            in.readFully(encoded);
+            PostingList.Decoder decoder = new PostingList.Decoder(encoded);
+            for (int member : members) {
+                positions.get(member).put(term, decoder.next());
+            }
+        }
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).attachTermPositions(positions.get(i));
+        }
+    }
+    
+    /**
+     * Writes the file's size and modification time, so a load can tell it changed since. A file that
+     * no longer matches the profiles read from it (a profile file must be exactly its text) is stamped
+     * with size -1, which never matches.
+     */
+    private static void writeFileStamp(DataOutputStream out, Path file, long extent) throws IOException {
+        long size = -1;
+        long modified = 0;
+        if (Files.exists(file)) {
+            modified = Files.getLastModifiedTime(file).toMillis();
+            size = Files.size(file);
+            boolean profileFile = file.getFileName().toString().endsWith(".md");
+            if (profileFile ? size != extent : size < extent) {
+                size = -1;
+            }
+        }
+        out.writeUTF(file.toString());
+        out.writeLong(size);
+        out.writeLong(modified);
+    }
+    
+    private static void writeStrings(DataOutputStream out, Map<String, Integer> strings) throws IOException {
+        writeVarLong(out, strings.size());
+        for (String value : strings.keySet()) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[(int) readVarLong(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+    
+    private static void writeIds(DataOutputStream out, Iterable<String> values, Map<String, Integer> ids)
+            throws IOException {
+        List<Integer> userIds = new ArrayList<>();
+        values.forEach(value -> userIds.add(ids.get(value)));
+        writeVarLong(out, userIds.size());
+        for (int id : userIds) {
+            writeVarLong(out, id);
+        }
+    }
+    
+    private static String[] readIds(DataInputStream in, String[] names) throws IOException {
+        String[] values = new String[(int) readVarLong(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = names[(int) readVarLong(in)];
+        }
+        return values;
+    }
+    
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    /** The profiles of a snapshot, the rules they were classified with and the files they were read from. */
+    public static class Contents {
+        private final List<UserProfile> users;
+        private final Map<String, String> ruleHashes;
+        private final Map<Path, long[]> fileStamps;
+        
+        Contents(List<UserProfile> users, Map<String, String> ruleHashes, Map<Path, long[]> fileStamps) {
+            this.users = users;
+            this.ruleHashes = ruleHashes;
+            this.fileStamps = fileStamps;
+        }
+        
+        public List<UserProfile> getUsers() {
+            return users;
+        }
+        
+        /** Category to definition hash, as {@link classifier.RuleFile#getDefinitionHashes()} gives them. */
+        public Map<String, String> getRuleHashes() {
+            return ruleHashes;
+        }
+        
+        /** Every file the profiles were read from. */
+        public Set<Path> getFiles() {
+            return fileStamps.keySet();
+        }
+        
+        /** The files that are gone, or whose size or modification time differ from when the snapshot was saved. */
+        public Set<Path> getChangedFiles() throws IOException {
+            Set<Path> changed = new LinkedHashSet<>();
+            for (Map.Entry<Path, long[]> stamp : fileStamps.entrySet()) {
+                Path file = stamp.getKey();
+                if (!Files.exists(file) || Files.size(file) != stamp.getValue()[0]
+                        || Files.getLastModifiedTime(file).toMillis() != stamp.getValue()[1]) {
+                    changed.add(file);
+                }
+            }
+            return changed;
+        }
+    }
+}
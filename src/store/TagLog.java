@@ -0,0 +1,348 @@
+package store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class TagLog implements AutoCloseable {
+    private static final String LOG_FILE = "tags.log";
+    private static final String CHECKPOINT_FILE = "tags.checkpoint";
+    private static final int HEADER_SIZE = 8;
+    
+    private final Path directory;
+    private final SyncPolicy syncPolicy;
+    private final long groupCommitMillis;
+    private FileChannel channel;
+    private long written;
+    private long synced;
+    private int recordsSinceCheckpoint;
+    private boolean closed;
+    private IOException syncFailure;
+    private Thread flusher;
+    
+    public enum SyncPolicy {
+        PER_OP,
+        GROUP,
+        ASYNC
+    }
+    
+    public enum Op {
+        ADD,
+        REMOVE
+    }
+    
+    public interface Replay {
+        void apply(Op op, String userId, String tag);
+    }
+    
+    public interface TagSource {
+        void forEachTag(Replay visitor);
+    }
+    
+    public TagLog(Path directory, SyncPolicy syncPolicy, long groupCommitMillis) {
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.groupCommitMillis = groupCommitMillis;
+    }
+    
+    /**
+     * Replays the checkpoint and then the log. The checkpoint holds every tag there was when it was
+     * written, so when one exists {@code clearTags} runs first and the tags the profiles were loaded
+     * with, e.g. from a snapshot, are replaced rather than merged with it.
+     */
+    public int recover(Runnable clearTags, Replay visitor) throws IOException {
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            clearTags.run();
+        }
+        int applied = replay(checkpoint, visitor);
+        
+        Path logFile = directory.resolve(LOG_FILE);
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long validEnd = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (true) {
+            header.clear();
+            if (readFully(channel, header, validEnd) < HEADER_SIZE) {
+                break;
+            }
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length <= 0 || validEnd + HEADER_SIZE + length > channel.size()) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, validEnd + HEADER_SIZE);
+            if (crc(payload.array(), length) != checksum) {
+                break;
+            }
+            apply(payload.array(), visitor);
+            validEnd += HEADER_SIZE + length;
+            recordsSinceCheckpoint++;
+            applied++;
+        }
+        
+        // A torn record at the tail is the write that was in flight when the process died.
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        
+        if (syncPolicy != SyncPolicy.PER_OP) {
+            flusher = new Thread(this::flushLoop, "tag-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        return applied;
+    }
+    
+    public long append(Op op, String userId, String tag) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(encode(op, userId, tag));
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Tag log is closed");
+            }
+            long start = channel.position();
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } catch (IOException e) {
+                // Drop the partial record so the next append does not land behind a torn one.
+                channel.truncate(start);
+                channel.position(start);
+                throw e;
+            }
+            recordsSinceCheckpoint++;
+            written++;
+            notifyAll();
+            return written;
+        }
+    }
+    
+    public void awaitDurable(long sequence) throws IOException {
+        switch (syncPolicy) {
+            case PER_OP:
+                sync(sequence);
+                break;
+            
+            case GROUP:
+                synchronized (this) {
+                    boolean interrupted = false;
+                    while (synced < sequence && syncFailure == null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (synced < sequence && syncFailure != null) {
+                        throw new IOException("Tag log sync failed", syncFailure);
+                    }
+                }
+                break;
+            
+            case ASYNC:
+                break;
+        }
+    }
+    
+    public synchronized int getRecordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+    
+    /**
+     * Writes every current tag to a fresh checkpoint and truncates the log. Callers must hold off
+     * new appends while this runs so the checkpoint and the truncated log agree.
+     */
+    public void checkpoint(TagSource tags) throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            IOException[] failure = new IOException[1];
+            tags.forEachTag((op, userId, tag) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    ByteBuffer record = ByteBuffer.wrap(encode(op, userId, tag));
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            out.force(true);
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        // Replaying the old log over the new checkpoint is harmless, so a crash before this point loses nothing.
+        synchronized (this) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            synced = written;
+            recordsSinceCheckpoint = 0;
+            notifyAll();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed || channel == null) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            sync(Long.MAX_VALUE);
+        } catch (IOException e) {
+            synchronized (this) {
+                syncFailure = e;
+                notifyAll();
+            }
+            throw e;
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private void sync(long sequence) throws IOException {
+        long target;
+        synchronized (this) {
+            if (synced >= sequence) {
+                return;
+            }
+            target = written;
+        }
+        channel.force(false);
+        synchronized (this) {
+            if (target > synced) {
+                synced = target;
+                notifyAll();
+            }
+        }
+    }
+    
+    private void flushLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (synced == written && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    // Let the commands arriving within the window share one fsync.
+                    long deadline = System.nanoTime() + groupCommitMillis * 1_000_000L;
+                    long remaining;
+                    while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                        wait(Math.max(1, remaining / 1_000_000L));
+                    }
+                }
+                sync(Long.MAX_VALUE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("   ⚠ Warning: Tag log sync failed: " + e.getMessage());
+            synchronized (this) {
+                syncFailure = e;
+                notifyAll();
+            }
+        }
+    }
+    
+    private static int replay(Path file, Replay visitor) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        int applied = 0;
+        while (data.remaining() >= HEADER_SIZE) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                throw new IOException("Truncated tag checkpoint: " + file);
+            }
+            byte[] payload = new byte[length];
+            data.get(payload);
+            if (crc(payload, length) != checksum) {
+                throw new IOException("Tag checkpoint checksum mismatch: " + file);
+            }
+            apply(payload, visitor);
+            applied++;
+        }
+        return applied;
+    }
+    
+    private static void apply(byte[] payload, Replay visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Op op = Op.values()[in.readByte()];
+        String userId = in.readUTF();
+        String tag = in.readUTF();
+        visitor.apply(op, userId, tag);
+    }
+    
+    private static byte[] encode(Op op, String userId, String tag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(op.ordinal());
+        out.writeUTF(userId);
+        out.writeUTF(tag);
+        
+        byte[] record = bytes.toByteArray();
+        int length = record.length - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER_SIZE, length);
+        ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+        return record;
+    }
+    
+    private static int crc(byte[] payload, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        return (int) crc.getValue();
+    }
+    
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
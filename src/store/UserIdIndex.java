@@ -0,0 +1,107 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * Maps numeric user ids to ordinals with open addressing and linear probing, two flat arrays
+ * instead of an entry object and an id string per user. Copy-on-write copies both arrays.
+ */
+final class UserIdIndex {
+    private static final long EMPTY = -1;
+    
+    private long[] keys;
+    private int[] ordinals;
+    private int size;
+    
+    UserIdIndex() {
+        this.keys = new long[16];
+        this.ordinals = new int[16];
+        Arrays.fill(keys, EMPTY);
+    }
+    
+    private UserIdIndex(UserIdIndex other) {
+        this.keys = other.keys.clone();
+        this.ordinals = other.ordinals.clone();
+        this.size = other.size;
+    }
+    
+    UserIdIndex copy() {
+        return new UserIdIndex(this);
+    }
+    
+    /** The ordinal of the user, or -1 if there is none. */
+    int get(long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(id, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == id) {
+                return ordinals[slot];
+            }
+        }
+        return -1;
+    }
+    
+    void put(long id, int ordinal) {
+        if ((size + 1) * 4L > keys.length * 3L) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (keys[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = id;
+            size++;
+        }
+        ordinals[slot] = ordinal;
+    }
+    
+    void remove(long id) {
+        int mask = keys.length - 1;
+        int slot = slot(id, mask);
+        while (keys[slot] != id) {
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Shift later keys of the probe run back so none is left behind the gap.
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                ordinals[gap] = ordinals[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldOrdinals = ordinals;
+        keys = new long[capacity];
+        ordinals = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                put(oldKeys[slot], oldOrdinals[slot]);
+            }
+        }
+    }
+    
+    private static int slot(long id, int mask) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ mixed >>> 32) & mask;
+    }
+}
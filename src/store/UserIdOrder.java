@@ -0,0 +1,45 @@
+package store;
+
+import java.util.Comparator;
+
+/**
+ * Orders user ids the way people read them: {@code user_9} before {@code user_10}. Ids that do not
+ * share a prefix followed by digits fall back to plain string order.
+ */
+public class UserIdOrder implements Comparator<String> {
+    public static final UserIdOrder INSTANCE = new UserIdOrder();
+    
+    @Override
+    public int compare(String a, String b) {
+        int digitsA = digitStart(a);
+        int digitsB = digitStart(b);
+        if (digitsA == digitsB && digitsA < a.length() && digitsB < b.length()
+                && a.regionMatches(0, b, 0, digitsA)) {
+            int numberA = a.length() - skipZeros(a, digitsA);
+            int numberB = b.length() - skipZeros(b, digitsB);
+            if (numberA != numberB) {
+                return Integer.compare(numberA, numberB);
+            }
+            int byValue = a.substring(a.length() - numberA).compareTo(b.substring(b.length() - numberB));
+            if (byValue != 0) {
+                return byValue;
+            }
+        }
+        return a.compareTo(b);
+    }
+    
+    private static int digitStart(String id) {
+        int i = id.length();
+        while (i > 0 && Character.isDigit(id.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+    
+    private static int skipZeros(String id, int from) {
+        while (from < id.length() - 1 && id.charAt(from) == '0') {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,52 @@
+package test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Minimal check runner for the tests under {@code test/}: each failed check is printed, and
+ * {@link #finish()} exits with status 1 if there was any.
+ */
+public class Checks {
+    private final String name;
+    private int passed;
+    private int failed;
+    
+    public Checks(String name) {
+        this.name = name;
+    }
+    
+    public void check(boolean condition, String description) {
+        if (condition) {
+            passed++;
+        } else {
+            failed++;
+            System.out.println("   ✗ FAILED: " + description);
+        }
+    }
+    
+    public void equal(Object expected, Object actual, String description) {
+        check(expected.equals(actual), description + ": expected " + expected + ", got " + actual);
+    }
+    
+    public void finish() {
+        System.out.println((failed == 0 ? "✓ " : "✗ ") + name + ": " + passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+    
+    public static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
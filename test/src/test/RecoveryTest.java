@@ -0,0 +1,216 @@
+package test;
+
+import config.Config;
+import engine.QueryEngine;
+import store.ContentStore;
+import store.SnapshotFile;
+import store.TagLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Damages tag log and snapshot files the way a crash or a bad disk would, and checks what
+ * recovery makes of them.
+ */
+public class RecoveryTest {
+    private static final Checks checks = new Checks("RecoveryTest");
+    
+    public static void main(String[] args) throws IOException {
+        Path root = Files.createTempDirectory("recovery-test");
+        try {
+            tornTail(root.resolve("torn"));
+            corruptRecord(root.resolve("corrupt"));
+            oldLogOverNewCheckpoint(root.resolve("checkpoint"));
+            snapshotChecksum(root.resolve("snapshot"));
+        } finally {
+            Checks.deleteTree(root);
+        }
+        checks.finish();
+    }
+    
+    /** A record cut short by a crash is dropped, and the log carries on behind the last whole one. */
+    private static void tornTail(Path dir) throws IOException {
+        Path log = dir.resolve("tags.log");
+        Tags tags = new Tags();
+        long afterTwo;
+        try (TagLog tagLog = open(dir, tags)) {
+            tagLog.append(TagLog.Op.ADD, "user_1", "vip");
+            tagLog.append(TagLog.Op.ADD, "user_2", "vip");
+            afterTwo = Files.size(log);
+            tagLog.append(TagLog.Op.ADD, "user_3", "vip");
+        }
+        truncate(log, Files.size(log) - 3);
+        
+        tags = new Tags();
+        int replayed;
+        try (TagLog tagLog = new TagLog(dir, TagLog.SyncPolicy.PER_OP, 0)) {
+            replayed = tagLog.recover(tags::clear, tags);
+            checks.equal(afterTwo, Files.size(log), "torn tail: log truncated to the last whole record");
+            tagLog.append(TagLog.Op.ADD, "user_4", "vip");
+        }
+        checks.equal(2, replayed, "torn tail: records replayed");
+        checks.equal("{user_1=[vip], user_2=[vip]}", tags.toString(), "torn tail: tags recovered");
+        
+        tags = new Tags();
+        try (TagLog tagLog = open(dir, tags)) {
+            checks.equal("{user_1=[vip], user_2=[vip], user_4=[vip]}", tags.toString(),
+                "torn tail: record appended after recovery is replayed");
+            checks.equal(3, tagLog.getRecordsSinceCheckpoint(), "torn tail: records in the log");
+        }
+    }
+    
+    /** Replay stops at the first record whose checksum does not match; nothing behind it is trusted. */
+    private static void corruptRecord(Path dir) throws IOException {
+        Path log = dir.resolve("tags.log");
+        long afterOne;
+        try (TagLog tagLog = open(dir, new Tags())) {
+            tagLog.append(TagLog.Op.ADD, "user_1", "vip");
+            afterOne = Files.size(log);
+            tagLog.append(TagLog.Op.ADD, "user_2", "vip");
+            tagLog.append(TagLog.Op.ADD, "user_3", "vip");
+        }
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 0x01;
+        bytes[(int) afterOne + 10] ^= 0x01;
+        Files.write(log, bytes);
+        
+        Tags tags = new Tags();
+        try (TagLog tagLog = open(dir, tags)) {
+            checks.equal("{user_1=[vip]}", tags.toString(), "corrupt record: only the records before it replayed");
+            checks.equal(afterOne, Files.size(log), "corrupt record: log truncated before it");
+            checks.equal(1, tagLog.getRecordsSinceCheckpoint(), "corrupt record: records in the log");
+        }
+    }
+    
+    /**
+     * A crash after the checkpoint is written but before the log is truncated replays the old log
+     * over the new checkpoint, which must give the same tags.
+     */
+    private static void oldLogOverNewCheckpoint(Path dir) throws IOException {
+        Path log = dir.resolve("tags.log");
+        Tags tags = new Tags();
+        byte[] oldLog;
+        try (TagLog tagLog = open(dir, tags)) {
+            mutate(tagLog, tags, TagLog.Op.ADD, "user_1", "vip");
+            mutate(tagLog, tags, TagLog.Op.ADD, "user_1", "spam");
+            mutate(tagLog, tags, TagLog.Op.ADD, "user_2", "vip");
+            mutate(tagLog, tags, TagLog.Op.REMOVE, "user_1", "vip");
+            mutate(tagLog, tags, TagLog.Op.ADD, "user_3", "spam");
+            oldLog = Files.readAllBytes(log);
+            tagLog.checkpoint(tags::forEachTag);
+            checks.equal(0L, Files.size(log), "checkpoint: log truncated");
+        }
+        String expected = tags.toString();
+        Files.write(log, oldLog);
+        
+        Tags recovered = new Tags();
+        recovered.add("user_9", "stale");
+        try (TagLog tagLog = open(dir, recovered)) {
+            checks.equal(expected, recovered.toString(), "old log over new checkpoint: same tags");
+            checks.equal(5, tagLog.getRecordsSinceCheckpoint(), "old log over new checkpoint: old records replayed");
+        }
+    }
+    
+    /** A snapshot with one changed byte, or cut short, is refused rather than loaded. */
+    private static void snapshotChecksum(Path dir) throws IOException {
+        Path profiles = dir.resolve("profiles");
+        Files.createDirectories(profiles);
+        for (int i = 1; i <= 3; i++) {
+            Files.writeString(profiles.resolve("user_" + i + ".md"), "# Final Profile (UUID): 00000000-0000-0000-0000-00000000000"
+                + i + "\n\n- آژانس املاک\n- مشاور مسکن\n");
+        }
+        Path snapshot = dir.resolve("store.snap");
+        QueryEngine engine = new QueryEngine();
+        engine.loadProfiles(profiles.toString());
+        engine.saveSnapshot(snapshot.toString());
+        ContentStore contentStore = new ContentStore(Config.getContentCacheSize());
+        checks.equal(3, SnapshotFile.read(snapshot, contentStore).getUsers().size(), "snapshot: intact file reads");
+        
+        byte[] bytes = Files.readAllBytes(snapshot);
+        byte[] uuid = "00000000-0000-0000-0000-000000000002".getBytes(StandardCharsets.UTF_8);
+        int at = indexOf(bytes, uuid);
+        checks.check(at >= 0, "snapshot: UUID found in the file");
+        byte[] changed = bytes.clone();
+        changed[at + uuid.length - 1] = '7';
+        Files.write(snapshot, changed);
+        checks.check(refused(snapshot, contentStore, "checksum mismatch"), "snapshot: changed byte is refused");
+        
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 5));
+        checks.check(refused(snapshot, contentStore, null), "snapshot: truncated file is refused");
+    }
+    
+    private static boolean refused(Path snapshot, ContentStore contentStore, String message) {
+        try {
+            SnapshotFile.read(snapshot, contentStore);
+            return false;
+        } catch (IOException e) {
+            return message == null || e.getMessage().contains(message);
+        }
+    }
+    
+    private static TagLog open(Path dir, Tags tags) throws IOException {
+        TagLog tagLog = new TagLog(dir, TagLog.SyncPolicy.PER_OP, 0);
+        tagLog.recover(tags::clear, tags);
+        return tagLog;
+    }
+    
+    private static void mutate(TagLog tagLog, Tags tags, TagLog.Op op, String userId, String tag) throws IOException {
+        tagLog.awaitDurable(tagLog.append(op, userId, tag));
+        tags.apply(op, userId, tag);
+    }
+    
+    private static void truncate(Path file, long size) throws IOException {
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), (int) size));
+    }
+    
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /** The tags a store would hold, as the log replays them. */
+    private static class Tags implements TagLog.Replay {
+        private final Map<String, Set<String>> byUser = new TreeMap<>();
+        
+        @Override
+        public void apply(TagLog.Op op, String userId, String tag) {
+            if (op == TagLog.Op.ADD) {
+                add(userId, tag);
+            } else if (byUser.containsKey(userId)) {
+                byUser.get(userId).remove(tag);
+                if (byUser.get(userId).isEmpty()) {
+                    byUser.remove(userId);
+                }
+            }
+        }
+        
+        void add(String userId, String tag) {
+            byUser.computeIfAbsent(userId, u -> new TreeSet<>()).add(tag);
+        }
+        
+        void clear() {
+            byUser.clear();
+        }
+        
+        void forEachTag(TagLog.Replay visitor) {
+            byUser.forEach((userId, userTags) -> userTags.forEach(tag -> visitor.apply(TagLog.Op.ADD, userId, tag)));
+        }
+        
+        @Override
+        public String toString() {
+            return byUser.toString();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package test;
+
+import store.RoaringBitmap;
+
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+/**
+ * Compares {@link RoaringBitmap} with {@link BitSet} on random sets built so that their 65536-value
+ * chunks fall on both sides of the 4096-value switch between array and bitmap containers, with
+ * and without run containers from {@link RoaringBitmap#runOptimize()}.
+ */
+public class RoaringBitmapTest {
+    private static final int CHUNK = 1 << 16;
+    private static final int CHUNKS = 6;
+    private static final int ARRAY_MAX = 4096;
+    private static final Checks checks = new Checks("RoaringBitmapTest");
+    
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        System.out.println("seed " + seed + ", " + rounds + " rounds");
+        Random random = new Random(seed);
+        for (int round = 0; round < rounds; round++) {
+            BitSet expectedA = randomSet(random);
+            BitSet expectedB = randomSet(random);
+            RoaringBitmap a = build(expectedA, random);
+            RoaringBitmap b = build(expectedB, random);
+            String label = "round " + round;
+            same(expectedA, a, label + " a");
+            same(expectedB, b, label + " b");
+            
+            BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            same(and, RoaringBitmap.and(a, b), label + " and");
+            BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+            same(or, RoaringBitmap.or(a, b), label + " or");
+            BitSet andNot = (BitSet) expectedA.clone();
+            andNot.andNot(expectedB);
+            same(andNot, RoaringBitmap.andNot(a, b), label + " andNot");
+            same(expectedA, a, label + " a unchanged by the operations");
+            
+            same(expectedA, RoaringBitmap.fromWords(expectedA.toLongArray()), label + " fromWords");
+            
+            BitSet copied = (BitSet) expectedA.clone();
+            RoaringBitmap copy = a.copy();
+            mutate(expectedA, a, random);
+            same(expectedA, a, label + " a after adds and removes");
+            a.runOptimize();
+            mutate(expectedA, a, random);
+            same(expectedA, a, label + " a after runOptimize, adds and removes");
+            same(copied, copy, label + " copy unchanged by changes to a");
+        }
+        checks.finish();
+    }
+    
+    /** A set whose chunks are empty, sparse, exactly at the switch, dense or made of runs. */
+    private static BitSet randomSet(Random random) {
+        BitSet set = new BitSet();
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int base = chunk * CHUNK;
+            switch (random.nextInt(6)) {
+                case 0:
+                    break;
+                
+                case 1:
+                    addRandom(set, base, 1 + random.nextInt(ARRAY_MAX), random);
+                    break;
+                
+                case 2:
+                    addRandom(set, base, ARRAY_MAX + random.nextInt(3) - 1, random);
+                    break;
+                
+                case 3:
+                    addRandom(set, base, ARRAY_MAX + 1 + random.nextInt(CHUNK - ARRAY_MAX), random);
+                    break;
+                
+                case 4:
+                    for (int runs = 1 + random.nextInt(20); runs > 0; runs--) {
+                        int start = random.nextInt(CHUNK);
+                        set.set(base + start, base + Math.min(CHUNK, start + 1 + random.nextInt(3000)));
+                    }
+                    break;
+                
+                default:
+                    set.set(base, base + CHUNK);
+                    break;
+            }
+        }
+        return set;
+    }
+    
+    private static void addRandom(BitSet set, int base, int count, Random random) {
+        while (count > 0) {
+            int value = base + random.nextInt(CHUNK);
+            if (!set.get(value)) {
+                set.set(value);
+                count--;
+            }
+        }
+    }
+    
+    /** Adds the values in random order, run-optimizing half the time. */
+    private static RoaringBitmap build(BitSet values, Random random) {
+        int[] order = values.stream().toArray();
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : order) {
+            bitmap.add(value);
+        }
+        if (random.nextBoolean()) {
+            bitmap.runOptimize();
+        }
+        return bitmap;
+    }
+    
+    /** Adds and removes values around the existing ones, so containers cross the switch both ways. */
+    private static void mutate(BitSet expected, RoaringBitmap bitmap, Random random) {
+        String wrong = null;
+        for (int i = random.nextInt(6000); i > 0; i--) {
+            int value = random.nextInt(CHUNKS * CHUNK);
+            boolean add = random.nextBoolean();
+            boolean changed = add ? bitmap.add(value) : bitmap.remove(value);
+            if (wrong == null && changed != (expected.get(value) != add)) {
+                wrong = (add ? "add " : "remove ") + value;
+            }
+            expected.set(value, add);
+        }
+        checks.check(wrong == null, wrong + " reports whether it changed the bitmap");
+    }
+    
+    private static void same(BitSet expected, RoaringBitmap actual, String label) {
+        checks.equal(expected.cardinality(), actual.getCardinality(), label + ": cardinality");
+        checks.equal(expected.isEmpty(), actual.isEmpty(), label + ": isEmpty");
+        PrimitiveIterator.OfInt values = actual.iterator();
+        int mismatch = -1;
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            if (!values.hasNext() || values.nextInt() != value) {
+                mismatch = value;
+                break;
+            }
+        }
+        checks.check(mismatch < 0 && !values.hasNext(), label + ": iterator differs at " + mismatch);
+        BitSet visited = new BitSet();
+        actual.forEach(visited::set);
+        checks.check(visited.equals(expected), label + ": forEach");
+        for (int value = 0; value < CHUNKS * CHUNK; value += 97) {
+            if (actual.contains(value) != expected.get(value)) {
+                checks.check(false, label + ": contains " + value);
+                break;
+            }
+        }
+    }
+}